@@ -0,0 +1,134 @@
+package com.example.webflaxcalc.executions;
+
+import com.example.webflaxcalc.configs.ExecutorConfig;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Бенчмарки FunctionExecutor: вызов JS-функции в прогретом движке и с компиляцией нового текста,
+ * нативная арифметика, вызов Python в живом процессе и первый вызов с запуском процесса.
+ *
+ * Нативная компиляция и кэш результатов выключены везде, кроме executeNative, —
+ * иначе простые функции не доходили бы до движка и процессов.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class FunctionExecutorBenchmark {
+
+    static final String JS = "function(x) { return x * x + 1; }";
+    static final String PYTHON = "lambda x: x * x + 1";
+
+    /** Исполнитель на весь прогон: движки и процессы прогреты. */
+    @State(Scope.Benchmark)
+    public static class Warm {
+        FunctionExecutor interpreted;
+        FunctionExecutor nativeExpressions;
+        int x;
+
+        @Setup(Level.Trial)
+        public void setUp() {
+            interpreted = new FunctionExecutor(settings(false));
+            nativeExpressions = new FunctionExecutor(settings(true));
+            interpreted.executeJs(JS, 0);
+            interpreted.executePython(PYTHON, 0);
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() {
+            interpreted.destroy();
+            nativeExpressions.destroy();
+        }
+    }
+
+    /** Новый исполнитель на каждый вызов: первый Python-вызов запускает процесс. */
+    @State(Scope.Thread)
+    public static class Fresh {
+        FunctionExecutor executor;
+
+        @Setup(Level.Invocation)
+        public void setUp() {
+            executor = new FunctionExecutor(settings(false));
+        }
+
+        @TearDown(Level.Invocation)
+        public void tearDown() {
+            executor.destroy();
+        }
+    }
+
+    /**
+     * Новый исполнитель на каждый вызов с прогретым JS-движком: кэш скриптов пуст,
+     * а не растёт от вызова к вызову, и текст функции компилируется впервые.
+     */
+    @State(Scope.Thread)
+    public static class FreshJs {
+        FunctionExecutor executor;
+
+        @Setup(Level.Invocation)
+        public void setUp() {
+            executor = new FunctionExecutor(settings(false));
+            executor.executeJs(JS, 0);
+        }
+
+        @TearDown(Level.Invocation)
+        public void tearDown() {
+            executor.destroy();
+        }
+    }
+
+    static ExecutorConfig settings(boolean nativeExpressions) {
+        ExecutorConfig settings = new ExecutorConfig();
+        settings.setNativeExpressions(nativeExpressions);
+        settings.setResultCacheSize(0);
+        return settings;
+    }
+
+    @Benchmark
+    public FunctionExecutor.ExecutionResult executeJsWarm(Warm state) {
+        return state.interpreted.executeJs(JS, state.x++);
+    }
+
+    /** Текст функции, которого ещё нет в кэше: разбор и компиляция скрипта плюс выполнение. */
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @Warmup(iterations = 3, batchSize = 1)
+    @Measurement(iterations = 20, batchSize = 1)
+    public FunctionExecutor.ExecutionResult executeJsCold(FreshJs state) {
+        return state.executor.executeJs("function(x) { return x * x + 2; }", 1);
+    }
+
+    @Benchmark
+    public FunctionExecutor.ExecutionResult executeNative(Warm state) {
+        return state.nativeExpressions.executeJs(JS, state.x++);
+    }
+
+    @Benchmark
+    public FunctionExecutor.ExecutionResult executePythonWarm(Warm state) {
+        return state.interpreted.executePython(PYTHON, state.x++);
+    }
+
+    /** Запуск python-процесса, загрузка функции и первый вызов. */
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    @Warmup(iterations = 3, batchSize = 1)
+    @Measurement(iterations = 20, batchSize = 1)
+    public FunctionExecutor.ExecutionResult executePythonSpawn(Fresh state) {
+        return state.executor.executePython(PYTHON, 1);
+    }
+}
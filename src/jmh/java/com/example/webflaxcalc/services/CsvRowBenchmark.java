@@ -0,0 +1,60 @@
+package com.example.webflaxcalc.services;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DefaultDataBufferFactory;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Построение ordered-строки: прежний String.format (плюс "data:" и кодирование в байты, как делал
+ * SSE-кодек) против CsvRowEncoder, и эвристика определения языка функции (isJs).
+ * С -prof gc видно и время, и аллокации на строку.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class CsvRowBenchmark {
+
+    private final DefaultDataBufferFactory factory = DefaultDataBufferFactory.sharedInstance;
+    private int iteration;
+    private double value = 0.123456789;
+
+    @Benchmark
+    public byte[] stringFormat() {
+        int i = iteration++;
+        String row = String.format(Locale.ROOT, "%d,%.6f,%d,%d,%.6f,%d,%d", i, value * i, 3L, 1, value - i, 12L, 0);
+        return ("data:" + row + "\n\n").getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Benchmark
+    public DataBuffer csvRowEncoder() {
+        int i = iteration++;
+        // массивы на строку, как в CalculationServiceImp.toOrderedRow
+        return CsvRowEncoder.orderedRow(factory, i, new double[]{value * i, value - i}, new long[]{3L, 12L},
+                new int[]{1, 0}, null);
+    }
+
+    @Benchmark
+    public boolean detectLanguageJs() {
+        return CalculationServiceImp.isJs("function(x) { return x * x; }");
+    }
+
+    @Benchmark
+    public boolean detectLanguagePython() {
+        return CalculationServiceImp.isJs("def f(x):\n    import math\n    return math.sqrt(x) + x ** 2");
+    }
+}
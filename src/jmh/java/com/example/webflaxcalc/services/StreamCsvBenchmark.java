@@ -0,0 +1,78 @@
+package com.example.webflaxcalc.services;
+
+import com.example.webflaxcalc.configs.ConfigJson;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.core.io.buffer.DefaultDataBufferFactory;
+import reactor.core.Disposable;
+import reactor.test.scheduler.VirtualTimeScheduler;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Пропускная способность streamCsv целиком (расписание, вычисление, сборка строк) в виртуальном
+ * времени: interval не ждётся по-настоящему, VirtualTimeScheduler проматывает всю сетку итераций.
+ * Функции нативные (ExpressionCompiler) и завершаются синхронно, поэтому измеряется сам конвейер.
+ * Результат — время на одну итерацию (строку ordered-режима или пару строк unordered).
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class StreamCsvBenchmark {
+
+    static final int ITERATIONS = 10_000;
+    static final int INTERVAL_MS = 10;
+
+    @Param({"true", "false"})
+    public boolean ordered;
+
+    private VirtualTimeScheduler scheduler;
+    private CalculationServiceImp service;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        scheduler = VirtualTimeScheduler.getOrSet();
+        ConfigJson config = new ConfigJson();
+        config.setFunction1("function(x) { return x * x; }");
+        config.setFunction2("lambda x: x / 2 + 1");
+        config.setInterval(INTERVAL_MS);
+        config.getExecutor().setResultCacheSize(0);
+        service = new CalculationServiceImp(config);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        service.destroy();
+        VirtualTimeScheduler.reset();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(ITERATIONS)
+    public long streamCsv() {
+        long[] bytes = new long[1];
+        Disposable subscription = service.streamCsv(ITERATIONS, ordered, DefaultDataBufferFactory.sharedInstance).subscribe(buf -> {
+            bytes[0] += buf.readableByteCount();
+            DataBufferUtils.release(buf);
+        });
+        scheduler.advanceTimeBy(Duration.ofMillis((long) INTERVAL_MS * (ITERATIONS + 1)));
+        subscription.dispose();
+        return bytes[0];
+    }
+}
@@ -1,26 +1,40 @@
 package com.example.webflaxcalc.configs;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 
 import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
 
 /**
- * Конфигурация Spring: грузим config.json из ресурсов при старте.
+ * Конфигурация Spring: грузим config.json при старте — из внешнего файла (свойство
+ * webflaxcalc.config-path, за его изменениями следит ConfigWatcher) или из ресурсов.
  * Если файла нет — бросаем исключение, чтобы разработчик увидел ошибку.
  */
 @Configuration
 public class AppConfig {
 
     /**
-     * Загружает config.json из classpath (src/main/resources).
+     * Загружает config.json из webflaxcalc.config-path, а если путь не задан — из classpath (src/main/resources).
      * @param mapper Jackson ObjectMapper (spring-boot предоставляет его)
+     * @param configPath путь к внешнему config.json; пусто — файл из classpath
      * @return десериализованный ConfigJson
      * @throws Exception если файл не найден или невалиден
      */
     @Bean
-    public ConfigJson configJson(ObjectMapper mapper) throws Exception {
+    public ConfigJson configJson(ObjectMapper mapper, @Value("${webflaxcalc.config-path:}") String configPath)
+            throws Exception {
+        if (!configPath.isBlank()) {
+            Path path = Path.of(configPath);
+            if (!Files.isRegularFile(path)) {
+                throw new IllegalStateException("config.json не найден: " + path.toAbsolutePath());
+            }
+            return mapper.readValue(path.toFile(), ConfigJson.class);
+        }
+
         InputStream is = getClass().getClassLoader().getResourceAsStream("config.json");
 
         if (is == null) {
@@ -1,19 +1,90 @@
 package com.example.webflaxcalc.configs;
 
+import java.util.List;
+
 /**
  * POJO, представляющий конфигурацию сервиса.
  * Поля:
+ *  - functions: список функций потока (см. {@link FunctionConfig}); элемент — строка с текстом
+ *    функции или объект {function, language, pure}. Если список не задан, функции — function1 и function2
  *  - function1: строка с JS- или Python-функцией (принимает int, возвращает float/double)
  *  - function2: вторая функция
+ *  - function1Pure / function2Pure: функция чистая (результат зависит только от x) —
+ *    её результаты можно брать из общего кэша (см. ExecutorConfig.resultCacheSize); по умолчанию false
+ *  - functionParallelism: сколько функций одной итерации вычисляется одновременно (по умолчанию 8)
  *  - interval: интервал между итерациями в миллисекундах
+ *  - schedule: "fixed-rate" (по умолчанию) — итерации по сетке start + i × interval;
+ *    "fixed-delay" — interval отсчитывается от завершения предыдущей итерации, итерации
+ *    не перекрываются (прежнее поведение)
+ *  - catchUp: что делать с пропущенными тиками fixed-rate: "burst" (по умолчанию), "skip", "coalesce".
+ *    Неизвестные schedule и catchUp отвергаются при загрузке и reload
+ *  - maxInFlight: сколько итераций fixed-rate может считаться одновременно (по умолчанию 16)
+ *  - batchSize: считать функции батчами по batchSize значений x с упреждением (по умолчанию 1 — без батчей);
+ *    полезно при малом или нулевом interval. Таймаут батча — TIMEOUT_MS на элемент, и результаты первой
+ *    итерации батча приходят только после всего батча, поэтому batchSize стоит держать в пределах десятков
+ *  - bulkChunkSize: сколько итераций в одном чанке bulk-режима (interval = 0 или mode=bulk), по умолчанию 256.
+ *    Чанк (как и батч batchSize) — один вызов исполнителя с таймаутом FunctionExecutor.TIMEOUT_MS на элемент,
+ *    поэтому зацикленная функция держит поток до bulkChunkSize × TIMEOUT_MS, прежде чем чанк получит ошибки таймаута
+ *  - bulkWindow: сколько чанков bulk-режима считается одновременно (окно переупорядочивания), по умолчанию 2 × ядра;
+ *    не больше числа потоков bulkhead'а функций потока — иначе лишние чанки простаивали бы в очереди
+ *    дольше queueTimeoutMs и возвращались бы строками "rejected"
+ *  - timingColumns: добавлять к строкам столбцы фаз времени в наносекундах (очередь, компиляция, выполнение);
+ *    ordered: ...,q1,c1,e1,q2,c2,e2; unordered: ...,q,c,e. По умолчанию false — формат строк прежний
+ *  - nodeBufferStats: вести общие по узлу счётчики незавершённых результатов (по умолчанию false)
+ *  - functionRegistration: открыть POST /api/functions (по умолчанию false — эндпоинт отвечает 403).
+ *    Он компилирует и выполняет присланный код без аутентификации: включать только в доверенной сети.
+ *    Читается при старте, reload его не меняет
+ *  - maxFunctions: сколько функций можно зарегистрировать через POST /api/functions (по умолчанию 1000)
+ *  - executor: настройки выполнения функций (см. {@link ExecutorConfig}), необязательно
+ *  - limiter: адаптивный ограничитель одновременных вычислений (см. {@link LimiterConfig}), необязательно
  *
  * Jackson использует стандартные геттеры/сеттеры для десериализации.
  */
 public class ConfigJson {
 
+    private List<FunctionConfig> functions;
+    private int functionParallelism = 8;
     private String function1;
     private String function2;
+    private boolean function1Pure;
+    private boolean function2Pure;
     private int interval;
+    private String schedule = "fixed-rate";
+    private String catchUp = "burst";
+    private int maxInFlight = 16;
+    private int batchSize = 1;
+    private int bulkChunkSize = 256;
+    private int bulkWindow = Runtime.getRuntime().availableProcessors() * 2;
+    private boolean timingColumns;
+    private boolean nodeBufferStats;
+    private boolean functionRegistration;
+    private int maxFunctions = 1000;
+    private ExecutorConfig executor = new ExecutorConfig();
+    private LimiterConfig limiter = new LimiterConfig();
+
+    public List<FunctionConfig> getFunctions() {
+        return functions;
+    }
+
+    public void setFunctions(List<FunctionConfig> functions) {
+        this.functions = functions;
+    }
+
+    /** Функции потока: список functions, а если он пуст — function1 и function2. */
+    public List<FunctionConfig> functionList() {
+        if (functions != null && !functions.isEmpty()) {
+            return functions;
+        }
+        return List.of(new FunctionConfig(function1, function1Pure), new FunctionConfig(function2, function2Pure));
+    }
+
+    public int getFunctionParallelism() {
+        return functionParallelism;
+    }
+
+    public void setFunctionParallelism(int functionParallelism) {
+        this.functionParallelism = functionParallelism;
+    }
 
     public String getFunction1() {
         return function1;
@@ -31,6 +102,22 @@ public class ConfigJson {
         this.function2 = function2;
     }
 
+    public boolean isFunction1Pure() {
+        return function1Pure;
+    }
+
+    public void setFunction1Pure(boolean function1Pure) {
+        this.function1Pure = function1Pure;
+    }
+
+    public boolean isFunction2Pure() {
+        return function2Pure;
+    }
+
+    public void setFunction2Pure(boolean function2Pure) {
+        this.function2Pure = function2Pure;
+    }
+
     public int getInterval() {
         return interval;
     }
@@ -38,4 +125,100 @@ public class ConfigJson {
     public void setInterval(int interval) {
         this.interval = interval;
     }
+
+    public String getSchedule() {
+        return schedule;
+    }
+
+    public void setSchedule(String schedule) {
+        this.schedule = schedule;
+    }
+
+    public String getCatchUp() {
+        return catchUp;
+    }
+
+    public void setCatchUp(String catchUp) {
+        this.catchUp = catchUp;
+    }
+
+    public int getMaxInFlight() {
+        return maxInFlight;
+    }
+
+    public void setMaxInFlight(int maxInFlight) {
+        this.maxInFlight = maxInFlight;
+    }
+
+    public int getBatchSize() {
+        return batchSize;
+    }
+
+    public void setBatchSize(int batchSize) {
+        this.batchSize = batchSize;
+    }
+
+    public int getBulkChunkSize() {
+        return bulkChunkSize;
+    }
+
+    public void setBulkChunkSize(int bulkChunkSize) {
+        this.bulkChunkSize = bulkChunkSize;
+    }
+
+    public int getBulkWindow() {
+        return bulkWindow;
+    }
+
+    public void setBulkWindow(int bulkWindow) {
+        this.bulkWindow = bulkWindow;
+    }
+
+    public boolean isTimingColumns() {
+        return timingColumns;
+    }
+
+    public void setTimingColumns(boolean timingColumns) {
+        this.timingColumns = timingColumns;
+    }
+
+    public boolean isNodeBufferStats() {
+        return nodeBufferStats;
+    }
+
+    public void setNodeBufferStats(boolean nodeBufferStats) {
+        this.nodeBufferStats = nodeBufferStats;
+    }
+
+    public boolean isFunctionRegistration() {
+        return functionRegistration;
+    }
+
+    public void setFunctionRegistration(boolean functionRegistration) {
+        this.functionRegistration = functionRegistration;
+    }
+
+    public int getMaxFunctions() {
+        return maxFunctions;
+    }
+
+    public void setMaxFunctions(int maxFunctions) {
+        this.maxFunctions = maxFunctions;
+    }
+
+    public ExecutorConfig getExecutor() {
+        return executor;
+    }
+
+    public void setExecutor(ExecutorConfig executor) {
+        this.executor = executor;
+    }
+
+    public LimiterConfig getLimiter() {
+        return limiter;
+    }
+
+    public void setLimiter(LimiterConfig limiter) {
+        this.limiter = limiter;
+    }
 }
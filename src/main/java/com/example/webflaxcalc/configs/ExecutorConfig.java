@@ -0,0 +1,164 @@
+package com.example.webflaxcalc.configs;
+
+/**
+ * POJO с настройками выполнения функций (секция "executor" в config.json).
+ * Поля:
+ *  - jsPoolMin: сколько JS-движков держать прогретыми всегда
+ *  - jsPoolMax: максимальное число JS-движков (одновременных JS-вызовов)
+ *  - jsPoolIdleMs: через сколько миллисекунд простоя лишний движок (сверх jsPoolMin) удаляется
+ *  - pythonWorkers: максимальное число резидентных python-процессов (одновременных Python-вызовов)
+ *  - pythonHealthCheckMs: период проверки свободных python-процессов
+ *  - nativeExpressions: компилировать простые арифметические функции в Java-код
+ *  - virtualThreads: выполнять вызовы на виртуальных потоках (JDK 21+; на старых JDK игнорируется с предупреждением в лог)
+ *  - maxConcurrentCalls: сколько вызовов одновременно выполняется в режиме virtualThreads
+ *  - jsThreads: размер JS-bulkhead'а (одновременных JS-вызовов); 0 — по jsPoolMax
+ *  - bulkheads: "language" — общий bulkhead на язык, "function" — отдельный на каждую функцию;
+ *    другое значение — IllegalArgumentException при старте
+ *  - functionThreads: размер bulkhead'а одной функции (режим "function")
+ *  - maxFunctionBulkheads: сколько bulkhead'ов функций может существовать одновременно (режим "function");
+ *    для новой функции сверх лимита закрывается простаивающий, а если все заняты — функция
+ *    выполняется в общем bulkhead'е языка
+ *  - bulkheadQueue: сколько вызовов может ждать в очереди одного bulkhead'а; сверх этого — отказ
+ *  - queueTimeoutMs: сколько вызов может ждать в очереди, прежде чем получит отказ
+ *  - resultCacheSize: сколько результатов (функция, x) чистых функций хранить в общем LRU-кэше; 0 — кэш выключен
+ *
+ * Все поля имеют значения по умолчанию, поэтому секцию можно не указывать.
+ */
+public class ExecutorConfig {
+
+    private int jsPoolMin = 2;
+    private int jsPoolMax = Math.max(4, Runtime.getRuntime().availableProcessors() * 2);
+    private long jsPoolIdleMs = 60_000;
+    private int pythonWorkers = 4;
+    private long pythonHealthCheckMs = 10_000;
+    private boolean nativeExpressions = true;
+    private boolean virtualThreads = false;
+    private int maxConcurrentCalls = 256;
+    private int resultCacheSize = 10_000;
+    private int jsThreads = 0;
+    private String bulkheads = "language";
+    private int functionThreads = 2;
+    private int maxFunctionBulkheads = 64;
+    private int bulkheadQueue = 256;
+    private long queueTimeoutMs = 1000;
+
+    public int getJsPoolMin() {
+        return jsPoolMin;
+    }
+
+    public void setJsPoolMin(int jsPoolMin) {
+        this.jsPoolMin = jsPoolMin;
+    }
+
+    public int getJsPoolMax() {
+        return jsPoolMax;
+    }
+
+    public void setJsPoolMax(int jsPoolMax) {
+        this.jsPoolMax = jsPoolMax;
+    }
+
+    public long getJsPoolIdleMs() {
+        return jsPoolIdleMs;
+    }
+
+    public void setJsPoolIdleMs(long jsPoolIdleMs) {
+        this.jsPoolIdleMs = jsPoolIdleMs;
+    }
+
+    public int getPythonWorkers() {
+        return pythonWorkers;
+    }
+
+    public void setPythonWorkers(int pythonWorkers) {
+        this.pythonWorkers = pythonWorkers;
+    }
+
+    public long getPythonHealthCheckMs() {
+        return pythonHealthCheckMs;
+    }
+
+    public void setPythonHealthCheckMs(long pythonHealthCheckMs) {
+        this.pythonHealthCheckMs = pythonHealthCheckMs;
+    }
+
+    public boolean isNativeExpressions() {
+        return nativeExpressions;
+    }
+
+    public void setNativeExpressions(boolean nativeExpressions) {
+        this.nativeExpressions = nativeExpressions;
+    }
+
+    public boolean isVirtualThreads() {
+        return virtualThreads;
+    }
+
+    public void setVirtualThreads(boolean virtualThreads) {
+        this.virtualThreads = virtualThreads;
+    }
+
+    public int getMaxConcurrentCalls() {
+        return maxConcurrentCalls;
+    }
+
+    public void setMaxConcurrentCalls(int maxConcurrentCalls) {
+        this.maxConcurrentCalls = maxConcurrentCalls;
+    }
+
+    public int getResultCacheSize() {
+        return resultCacheSize;
+    }
+
+    public void setResultCacheSize(int resultCacheSize) {
+        this.resultCacheSize = resultCacheSize;
+    }
+
+    public int getJsThreads() {
+        return jsThreads;
+    }
+
+    public void setJsThreads(int jsThreads) {
+        this.jsThreads = jsThreads;
+    }
+
+    public String getBulkheads() {
+        return bulkheads;
+    }
+
+    public void setBulkheads(String bulkheads) {
+        this.bulkheads = bulkheads;
+    }
+
+    public int getFunctionThreads() {
+        return functionThreads;
+    }
+
+    public void setFunctionThreads(int functionThreads) {
+        this.functionThreads = functionThreads;
+    }
+
+    public int getMaxFunctionBulkheads() {
+        return maxFunctionBulkheads;
+    }
+
+    public void setMaxFunctionBulkheads(int maxFunctionBulkheads) {
+        this.maxFunctionBulkheads = maxFunctionBulkheads;
+    }
+
+    public int getBulkheadQueue() {
+        return bulkheadQueue;
+    }
+
+    public void setBulkheadQueue(int bulkheadQueue) {
+        this.bulkheadQueue = bulkheadQueue;
+    }
+
+    public long getQueueTimeoutMs() {
+        return queueTimeoutMs;
+    }
+
+    public void setQueueTimeoutMs(long queueTimeoutMs) {
+        this.queueTimeoutMs = queueTimeoutMs;
+    }
+}
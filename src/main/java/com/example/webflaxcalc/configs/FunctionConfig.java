@@ -0,0 +1,57 @@
+package com.example.webflaxcalc.configs;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+
+/**
+ * POJO одной функции из списка "functions" в config.json.
+ * Поля:
+ *  - function: текст функции на JS или Python
+ *  - language: "js" или "python"; если не указан — определяется по тексту
+ *  - pure: функция чистая — её результаты можно брать из общего кэша (по умолчанию false)
+ *
+ * Элемент списка можно записать и просто строкой с текстом функции.
+ */
+public class FunctionConfig {
+
+    private String function;
+    private String language;
+    private boolean pure;
+
+    public FunctionConfig() {
+    }
+
+    /** Элемент списка, записанный строкой (Jackson вызывает этот конструктор для JSON-строки). */
+    @JsonCreator(mode = JsonCreator.Mode.DELEGATING)
+    public FunctionConfig(String function) {
+        this.function = function;
+    }
+
+    public FunctionConfig(String function, boolean pure) {
+        this.function = function;
+        this.pure = pure;
+    }
+
+    public String getFunction() {
+        return function;
+    }
+
+    public void setFunction(String function) {
+        this.function = function;
+    }
+
+    public String getLanguage() {
+        return language;
+    }
+
+    public void setLanguage(String language) {
+        this.language = language;
+    }
+
+    public boolean isPure() {
+        return pure;
+    }
+
+    public void setPure(boolean pure) {
+        this.pure = pure;
+    }
+}
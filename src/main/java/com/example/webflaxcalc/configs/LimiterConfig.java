@@ -0,0 +1,80 @@
+package com.example.webflaxcalc.configs;
+
+/**
+ * POJO с настройками адаптивного ограничителя параллелизма (секция "limiter" в config.json).
+ * Поля:
+ *  - enabled: включить ограничитель (по умолчанию false — вызовы идут в executor напрямую)
+ *  - initialLimit: начальный лимит одновременных вычислений
+ *  - minLimit / maxLimit: границы, в которых лимит подстраивается
+ *  - smoothing: доля нового значения при пересчёте лимита (0..1), чем меньше — тем плавнее
+ *  - rttTolerance: во сколько раз задержка может превысить обычную, прежде чем лимит начнёт снижаться
+ *  - queueMs: сколько вызов может ждать свободного места, когда лимит исчерпан; 0 — сразу отказ
+ *
+ * Все поля имеют значения по умолчанию, поэтому секцию можно не указывать.
+ */
+public class LimiterConfig {
+
+    private boolean enabled;
+    private int initialLimit = 20;
+    private int minLimit = 2;
+    private int maxLimit = 500;
+    private double smoothing = 0.2;
+    private double rttTolerance = 1.5;
+    private long queueMs = 50;
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    public int getInitialLimit() {
+        return initialLimit;
+    }
+
+    public void setInitialLimit(int initialLimit) {
+        this.initialLimit = initialLimit;
+    }
+
+    public int getMinLimit() {
+        return minLimit;
+    }
+
+    public void setMinLimit(int minLimit) {
+        this.minLimit = minLimit;
+    }
+
+    public int getMaxLimit() {
+        return maxLimit;
+    }
+
+    public void setMaxLimit(int maxLimit) {
+        this.maxLimit = maxLimit;
+    }
+
+    public double getSmoothing() {
+        return smoothing;
+    }
+
+    public void setSmoothing(double smoothing) {
+        this.smoothing = smoothing;
+    }
+
+    public double getRttTolerance() {
+        return rttTolerance;
+    }
+
+    public void setRttTolerance(double rttTolerance) {
+        this.rttTolerance = rttTolerance;
+    }
+
+    public long getQueueMs() {
+        return queueMs;
+    }
+
+    public void setQueueMs(long queueMs) {
+        this.queueMs = queueMs;
+    }
+}
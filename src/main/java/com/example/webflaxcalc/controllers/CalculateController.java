@@ -2,14 +2,25 @@ package com.example.webflaxcalc.controllers;
 
 
 import com.example.webflaxcalc.services.CalculationService;
+import com.example.webflaxcalc.services.RegisteredFunction;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
+import org.springframework.http.server.reactive.ServerHttpResponse;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.server.ResponseStatusException;
 import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.ArrayList;
+import java.util.List;
 
 /**
  * REST-контроллер, предоставляет endpoint /api/calculate
  *
  * @Produces text/event-stream — SSE-like streaming of lines. Клиент может читать построчно.
+ * Строки уже закодированы сервисом в SSE-кадры, поэтому пишутся в ответ напрямую,
+ * минуя кодеки, с flush после каждой строки.
  */
 @RestController
 @RequestMapping("/api")
@@ -26,13 +37,66 @@ public class CalculateController {
      *
      * @param count количество итераций (default 10)
      * @param ordered true -> ordered output, false -> unordered
-     * @return Flux<String> — поток CSV-строк
+     * @param mode "bulk" -> считать без interval, параллельными чанками (как можно быстрее)
+     * @param f id функций из POST /api/functions (f=a&f=b&f=c или f=a,b,c) — весь список функций
+     *          потока вместо config.json (404, если id неизвестен)
+     * @param f1 id функции вместо первой функции из config.json
+     * @param f2 id функции вместо второй
+     * @return Mono<Void> — завершается, когда все строки записаны в ответ
      */
     @GetMapping(value = "/calculate", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
-    public Flux<String> calculate(
+    public Mono<Void> calculate(
             @RequestParam(name = "count", defaultValue = "10") int count,
-            @RequestParam(name = "ordered", defaultValue = "true") boolean ordered) {
+            @RequestParam(name = "ordered", defaultValue = "true") boolean ordered,
+            @RequestParam(name = "mode", defaultValue = "stream") String mode,
+            @RequestParam(name = "f", required = false) List<String> f,
+            @RequestParam(name = "f1", required = false) String f1,
+            @RequestParam(name = "f2", required = false) String f2,
+            ServerHttpResponse response) {
+
+        List<RegisteredFunction> functions = functions(service, f, f1, f2);
+        response.getHeaders().setContentType(MediaType.TEXT_EVENT_STREAM);
+        Flux<DataBuffer> rows = "bulk".equalsIgnoreCase(mode)
+                ? service.streamCsvBulk(count, ordered, functions, response.bufferFactory())
+                : service.streamCsv(count, ordered, functions, response.bufferFactory());
+        return response.writeAndFlushWith(rows.map(Mono::just));
+    }
+
+    /**
+     * Функции потока по параметрам запроса: f задаёт весь список, f1 / f2 заменяют первую и вторую
+     * функцию из config.json; null — без параметров, функции из config.json.
+     */
+    static List<RegisteredFunction> functions(CalculationService service, List<String> f, String f1, String f2) {
+        if (f != null && !f.isEmpty()) {
+            List<RegisteredFunction> functions = new ArrayList<>(f.size());
+            for (String id : f) {
+                functions.add(resolve(service, id.trim()));
+            }
+            return functions;
+        }
+        if (f1 == null && f2 == null) {
+            return null;
+        }
+        List<RegisteredFunction> functions = new ArrayList<>(service.defaultFunctions());
+        if (f1 != null) {
+            functions.set(0, resolve(service, f1));
+        }
+        if (f2 != null) {
+            if (functions.size() < 2) {
+                functions.add(resolve(service, f2));
+            } else {
+                functions.set(1, resolve(service, f2));
+            }
+        }
+        return functions;
+    }
 
-        return service.streamCsv(count, ordered);
+    /** Зарегистрированная функция по id; 404, если такой нет. */
+    static RegisteredFunction resolve(CalculationService service, String id) {
+        RegisteredFunction fn = service.functions().get(id);
+        if (fn == null) {
+            throw new ResponseStatusException(HttpStatus.NOT_FOUND, "unknown function id: " + id);
+        }
+        return fn;
     }
 }
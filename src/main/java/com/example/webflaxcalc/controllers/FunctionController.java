@@ -0,0 +1,59 @@
+package com.example.webflaxcalc.controllers;
+
+import com.example.webflaxcalc.services.CalculationService;
+import com.example.webflaxcalc.services.RegisteredFunction;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.server.ResponseStatusException;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+/**
+ * REST-контроллер реестра функций: /api/functions
+ *
+ * Функция регистрируется один раз (компилируется или загружается в python-процесс)
+ * и дальше передаётся в /api/calculate по id: /api/calculate?f1=<id>&f2=<id>.
+ *
+ * Регистрация выполняет присланный код без аутентификации, поэтому выключена по умолчанию:
+ * POST отвечает 403, пока в config.json не задано "functionRegistration": true.
+ */
+@RestController
+@RequestMapping("/api/functions")
+public class FunctionController {
+
+    private final CalculationService service;
+
+    public FunctionController(CalculationService service) {
+        this.service = service;
+    }
+
+    /**
+     * POST /api/functions {"function": "lambda x: x * 2", "language": "python"}
+     *
+     * Подготовка может запускать python-процесс, поэтому выполняется на boundedElastic, а не в event loop.
+     *
+     * @return зарегистрированная функция с id; 400 — функция не компилируется или язык неизвестен;
+     *         403 — регистрация не включена в config.json
+     */
+    @PostMapping
+    @ResponseStatus(HttpStatus.CREATED)
+    public Mono<RegisteredFunction> register(@RequestBody FunctionRequest request) {
+        if (!service.functions().isRegistrationEnabled()) {
+            return Mono.error(new ResponseStatusException(HttpStatus.FORBIDDEN,
+                    "function registration is disabled (functionRegistration in config.json)"));
+        }
+        return Mono.fromCallable(() -> service.functions()
+                        .register(request.getFunction(), request.getLanguage(), request.isPure()))
+                .subscribeOn(Schedulers.boundedElastic())
+                .onErrorMap(IllegalArgumentException.class,
+                        e -> new ResponseStatusException(HttpStatus.BAD_REQUEST, e.getMessage()))
+                .onErrorMap(IllegalStateException.class,
+                        e -> new ResponseStatusException(HttpStatus.SERVICE_UNAVAILABLE, e.getMessage()));
+    }
+
+    /** GET /api/functions/{id}: зарегистрированная функция; 404, если такой нет. */
+    @GetMapping("/{id}")
+    public RegisteredFunction get(@PathVariable("id") String id) {
+        return CalculateController.resolve(service, id);
+    }
+}
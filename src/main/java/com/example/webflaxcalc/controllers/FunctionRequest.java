@@ -0,0 +1,39 @@
+package com.example.webflaxcalc.controllers;
+
+/**
+ * Тело POST /api/functions.
+ * Поля:
+ *  - function: текст функции на JS или Python (как function1 в config.json)
+ *  - language: "js" или "python"; если не указан — определяется по тексту
+ *  - pure: функция чистая — её результаты можно брать из общего кэша (по умолчанию false)
+ */
+public class FunctionRequest {
+
+    private String function;
+    private String language;
+    private boolean pure;
+
+    public String getFunction() {
+        return function;
+    }
+
+    public void setFunction(String function) {
+        this.function = function;
+    }
+
+    public String getLanguage() {
+        return language;
+    }
+
+    public void setLanguage(String language) {
+        this.language = language;
+    }
+
+    public boolean isPure() {
+        return pure;
+    }
+
+    public void setPure(boolean pure) {
+        this.pure = pure;
+    }
+}
@@ -0,0 +1,189 @@
+package com.example.webflaxcalc.executions;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Bulkhead — изолированный исполнитель для одного языка или одной функции.
+ *
+ * Не больше threads задач выполняются одновременно и не больше queueCapacity ждут в очереди;
+ * задача сверх этого сразу отклоняется ({@link RejectedExecutionException}), а не ждёт
+ * в общей неограниченной очереди. Так медленная функция занимает только свой bulkhead
+ * и не отнимает потоки и место в очереди у остальных.
+ *
+ * Два варианта:
+ *  - {@link #platform} — собственный ThreadPoolExecutor с ограниченной ArrayBlockingQueue;
+ *  - {@link #virtual} — общий executor виртуальных потоков; очередь и параллелизм
+ *    ограничены семафорами (виртуальный поток дёшево ждёт своей очереди).
+ */
+public class Bulkhead {
+
+    private final String name;
+    private final int threads;
+    private final int queueCapacity;
+
+    /** Собственный пул ({@link #platform}) или общий executor виртуальных потоков. */
+    private final ExecutorService pool;
+    private final boolean ownsPool;
+
+    /** Только для {@link #virtual}: места (выполняются + ждут) и разрешения на выполнение. */
+    private final Semaphore slots;
+    private final Semaphore running;
+
+    private final AtomicInteger active = new AtomicInteger();
+    private volatile boolean closed;
+    private final LongAdder rejected = new LongAdder();
+
+    private Bulkhead(String name, int threads, int queueCapacity, ExecutorService pool, boolean ownsPool) {
+        this.name = name;
+        this.threads = threads;
+        this.queueCapacity = queueCapacity;
+        this.pool = pool;
+        this.ownsPool = ownsPool;
+        this.slots = ownsPool ? null : new Semaphore(threads + queueCapacity);
+        this.running = ownsPool ? null : new Semaphore(threads);
+    }
+
+    /**
+     * Bulkhead со своим пулом платформенных потоков.
+     *
+     * @param name имя (для потоков и сообщений об ошибках)
+     * @param threads сколько задач выполняется одновременно
+     * @param queueCapacity сколько задач может ждать в очереди
+     */
+    public static Bulkhead platform(String name, int threads, int queueCapacity) {
+        int t = Math.max(1, threads);
+        int q = Math.max(1, queueCapacity);
+        ThreadPoolExecutor pool = new ThreadPoolExecutor(t, t, 60, TimeUnit.SECONDS, new ArrayBlockingQueue<>(q), r -> {
+            Thread thread = new Thread(r, name + "-exec-worker");
+            thread.setDaemon(true);
+            return thread;
+        }, new ThreadPoolExecutor.AbortPolicy());
+        pool.allowCoreThreadTimeOut(true);
+        return new Bulkhead(name, t, q, pool, true);
+    }
+
+    /** Bulkhead поверх общего executor виртуальных потоков (executor не закрывается в {@link #shutdownNow()}). */
+    public static Bulkhead virtual(String name, ExecutorService executor, int threads, int queueCapacity) {
+        return new Bulkhead(name, Math.max(1, threads), Math.max(1, queueCapacity), executor, false);
+    }
+
+    /**
+     * Поставить задачу в очередь.
+     *
+     * @throws RejectedExecutionException если bulkhead заполнен (или закрыт)
+     */
+    public void execute(Runnable task) {
+        if (ownsPool) {
+            try {
+                pool.execute(() -> runCounted(task));
+            } catch (RejectedExecutionException e) {
+                rejected.increment();
+                throw e;
+            }
+            return;
+        }
+
+        if (closed) {
+            throw new RejectedExecutionException("bulkhead " + name + " is shut down");
+        }
+        if (!slots.tryAcquire()) {
+            rejected.increment();
+            throw new RejectedExecutionException("bulkhead " + name + " is full");
+        }
+        try {
+            pool.execute(() -> {
+                try {
+                    running.acquire();
+                } catch (InterruptedException ie) {
+                    slots.release();
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+                try {
+                    runCounted(task);
+                } finally {
+                    running.release();
+                    slots.release();
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            slots.release();
+            throw e;
+        }
+    }
+
+    private void runCounted(Runnable task) {
+        active.incrementAndGet();
+        try {
+            task.run();
+        } finally {
+            active.decrementAndGet();
+        }
+    }
+
+    public String name() {
+        return name;
+    }
+
+    public int threads() {
+        return threads;
+    }
+
+    public int queueCapacity() {
+        return queueCapacity;
+    }
+
+    /** Сколько задач выполняется сейчас. */
+    public int activeCount() {
+        return active.get();
+    }
+
+    /** Сколько задач ждёт в очереди. */
+    public int queuedCount() {
+        if (ownsPool) {
+            return ((ThreadPoolExecutor) pool).getQueue().size();
+        }
+        return Math.max(0, threads + queueCapacity - slots.availablePermits() - active.get());
+    }
+
+    /** Сколько задач отклонено из-за заполненной очереди. */
+    public long rejectedCount() {
+        return rejected.sum();
+    }
+
+    /** Нет ни выполняющихся, ни ждущих задач. */
+    public boolean isIdle() {
+        return activeCount() == 0 && queuedCount() == 0;
+    }
+
+    /**
+     * Закрыть bulkhead для новых задач: принятые задачи доработают, новые получат
+     * {@link RejectedExecutionException}. Собственные потоки завершатся после них.
+     */
+    public void shutdown() {
+        closed = true;
+        if (ownsPool) {
+            pool.shutdown();
+        }
+    }
+
+    /** Закрыт ли bulkhead ({@link #shutdown()} или {@link #shutdownNow()}). */
+    public boolean isShutdown() {
+        return closed;
+    }
+
+    /** Остановить собственный пул (общий executor виртуальных потоков закрывает владелец). */
+    public void shutdownNow() {
+        closed = true;
+        if (ownsPool) {
+            pool.shutdownNow();
+        }
+    }
+}
@@ -0,0 +1,597 @@
+package com.example.webflaxcalc.executions;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.DoubleBinaryOperator;
+import java.util.function.DoubleUnaryOperator;
+
+/**
+ * ExpressionCompiler — компилирует простые арифметические функции в Java-код.
+ *
+ * Большинство функций в config.json — это арифметика над x плюс вызовы Math/math:
+ *  - JS:     "function(x) { return x * x; }", "function f(x) { return Math.sqrt(x); }"
+ *  - Python: "lambda x: x ** 2", "def f(x): import math; return math.sin(x) / 2"
+ * Для них строится дерево DoubleUnaryOperator (константы сворачиваются при компиляции),
+ * которое JIT инлайнит — вызов стоит наносекунды вместо похода в движок или процесс.
+ *
+ * Всё, что выходит за это подмножество (несколько операторов, условия, переменные,
+ * незнакомые функции), не компилируется: {@link #compile} возвращает null,
+ * и FunctionExecutor выполняет функцию как раньше — в Nashorn или в python-воркере.
+ * Подмножество не шире интерпретатора: текст, который компилируется здесь, выполняется
+ * и там с тем же результатом. Поэтому JS — только ES5 (Nashorn не знает стрелочных функций),
+ * а модуль math в Python доступен, только если функция сама его импортирует.
+ *
+ * Семантика повторяет исходный язык:
+ *  - JS: все числа double, % — остаток с знаком делимого, деление на 0 даёт Infinity/NaN;
+ *  - Python: // и % — с округлением вниз, ** — возведение в степень,
+ *    деление на 0 бросает {@link ArithmeticException} (в Python это ZeroDivisionError).
+ *    Python считает целые числа точно, поэтому для Python-функций нечисловой результат
+ *    (NaN/Infinity) или ArithmeticException — сигнал выполнить функцию интерпретатором.
+ */
+public final class ExpressionCompiler {
+
+    /** Диалект исходного текста. */
+    public enum Dialect { JS, PYTHON }
+
+    private ExpressionCompiler() {
+    }
+
+    /**
+     * Скомпилировать функцию.
+     *
+     * @param funcText текст функции
+     * @param dialect язык функции
+     * @return скомпилированная функция или null, если текст вне поддерживаемого подмножества
+     */
+    public static DoubleUnaryOperator compile(String funcText, Dialect dialect) {
+        if (funcText == null) {
+            return null;
+        }
+        try {
+            return new Parser(tokenize(funcText, dialect), dialect).parseFunction();
+        } catch (UnsupportedOperationException e) {
+            return null;
+        }
+    }
+
+    // ---------------------------------------------------------------- лексер
+
+    private static final int NUMBER = 0;
+    private static final int IDENT = 1;
+    private static final int SYMBOL = 2;
+    private static final int EOF = 3;
+
+    private static final class Token {
+        final int type;
+        final String text;
+        final double number;
+
+        Token(int type, String text, double number) {
+            this.type = type;
+            this.text = text;
+            this.number = number;
+        }
+
+        boolean is(String s) {
+            return type != NUMBER && text.equals(s);
+        }
+    }
+
+    private static List<Token> tokenize(String s, Dialect dialect) {
+        List<Token> tokens = new ArrayList<>();
+        int i = 0;
+        int n = s.length();
+        while (i < n) {
+            char c = s.charAt(i);
+            if (c == '\n' || c == '\r') {
+                // перевод строки меняет смысл текста: в Python завершает оператор, в JS после
+                // return вставляет ';'. Допускаем его только там, где смысл известен
+                if (c == '\r' && i + 1 < n && s.charAt(i + 1) == '\n') {
+                    i++;
+                }
+                int start = ++i;
+                while (i < n && (s.charAt(i) == ' ' || s.charAt(i) == '\t')) {
+                    i++;
+                }
+                if (i < n && (s.charAt(i) == '\n' || s.charAt(i) == '\r')) {
+                    if (s.substring(i).isBlank()) {
+                        break; // пустые строки в конце текста
+                    }
+                    throw unsupported(); // пустые строки внутри
+                }
+                if (i == n) {
+                    break; // перевод строки в конце текста
+                }
+                if (dialect == Dialect.JS) {
+                    Token prev = tokens.isEmpty() ? null : tokens.get(tokens.size() - 1);
+                    if (prev != null && prev.is("return")) {
+                        throw unsupported(); // "return\n expr" в JS возвращает undefined
+                    }
+                } else {
+                    tokens.add(new Token(SYMBOL, "\n" + s.substring(start, i), 0));
+                }
+            } else if (Character.isWhitespace(c)) {
+                i++;
+            } else if (Character.isDigit(c) || (c == '.' && i + 1 < n && Character.isDigit(s.charAt(i + 1)))) {
+                int start = i;
+                while (i < n && (Character.isDigit(s.charAt(i)) || s.charAt(i) == '.')) {
+                    i++;
+                }
+                if (i < n && (s.charAt(i) == 'e' || s.charAt(i) == 'E')) {
+                    i++;
+                    if (i < n && (s.charAt(i) == '+' || s.charAt(i) == '-')) {
+                        i++;
+                    }
+                    while (i < n && Character.isDigit(s.charAt(i))) {
+                        i++;
+                    }
+                }
+                if (i < n && Character.isLetter(s.charAt(i))) {
+                    throw unsupported(); // 0x10, 1_000, 10j и т.п.
+                }
+                String literal = s.substring(start, i);
+                if (literal.length() > 1 && literal.charAt(0) == '0' && Character.isDigit(literal.charAt(1))) {
+                    throw unsupported(); // 010: в Python ошибка синтаксиса, в JS — восьмеричное 8
+                }
+                try {
+                    tokens.add(new Token(NUMBER, literal, Double.parseDouble(literal)));
+                } catch (NumberFormatException e) {
+                    throw unsupported();
+                }
+            } else if (Character.isLetter(c) || c == '_' || c == '$') {
+                int start = i;
+                while (i < n && (Character.isLetterOrDigit(s.charAt(i)) || s.charAt(i) == '_' || s.charAt(i) == '$')) {
+                    i++;
+                }
+                tokens.add(new Token(IDENT, s.substring(start, i), 0));
+            } else {
+                String two = i + 1 < n ? s.substring(i, i + 2) : "";
+                if ((two.equals("**") || two.equals("//")) && dialect == Dialect.PYTHON) {
+                    tokens.add(new Token(SYMBOL, two, 0));
+                    i += 2;
+                } else if ("+-*/%(){};:,.".indexOf(c) >= 0) {
+                    if (two.equals("//") || two.equals("/*") || two.equals("**")) {
+                        throw unsupported(); // комментарии JS, ** в ES5
+                    }
+                    tokens.add(new Token(SYMBOL, String.valueOf(c), 0));
+                    i++;
+                } else {
+                    throw unsupported();
+                }
+            }
+        }
+        tokens.add(new Token(EOF, "", 0));
+        return tokens;
+    }
+
+    private static UnsupportedOperationException unsupported() {
+        return new UnsupportedOperationException();
+    }
+
+    // ---------------------------------------------------------------- парсер
+
+    private static final class Parser {
+        private final List<Token> tokens;
+        private final Dialect dialect;
+        private int pos;
+        private String param;
+        /** В Python-функции есть "import math" — только тогда math.* определён. */
+        private boolean mathImported;
+
+        Parser(List<Token> tokens, Dialect dialect) {
+            this.tokens = tokens;
+            this.dialect = dialect;
+        }
+
+        DoubleUnaryOperator parseFunction() {
+            Node body = dialect == Dialect.JS ? parseJsFunction() : parsePythonFunction();
+            while (accept(";")) {
+                // допускаем завершающие ';'
+            }
+            expect(EOF);
+            if (param.equals("Math") || param.equals("math")) {
+                throw unsupported();
+            }
+            return body.op;
+        }
+
+        /** function [name](x) { return expr; } */
+        private Node parseJsFunction() {
+            expectSymbol("function");
+            if (peek().type == IDENT) {
+                pos++;
+            }
+            expectSymbol("(");
+            param = identifier();
+            expectSymbol(")");
+            return parseJsBlock();
+        }
+
+        private Node parseJsBlock() {
+            expectSymbol("{");
+            expectSymbol("return");
+            Node body = expression();
+            accept(";");
+            expectSymbol("}");
+            return body;
+        }
+
+        /**
+         * lambda x: expr | def f(x): [import math;] return expr — в одну строку или с телом
+         * на отдельных строках с одинаковым отступом: "def f(x):\n    [import math\n    ]return expr".
+         * Другие переводы строк (внутри выражения, в lambda) оставляем интерпретатору.
+         */
+        private Node parsePythonFunction() {
+            if (accept("lambda")) {
+                param = identifier();
+                expectSymbol(":");
+                return expression();
+            }
+            expectSymbol("def");
+            // воркер вызывает функцию по имени f — другие имена оставляем интерпретатору
+            expectSymbol("f");
+            expectSymbol("(");
+            param = identifier();
+            expectSymbol(")");
+            expectSymbol(":");
+            String indent = null;
+            if (peek().type == SYMBOL && peek().text.startsWith("\n")) {
+                indent = peek().text;
+                if (indent.length() == 1) {
+                    throw unsupported(); // тело def без отступа
+                }
+                pos++;
+            }
+            if (accept("import")) {
+                expectSymbol("math");
+                mathImported = true;
+                expectSymbol(indent != null ? indent : ";");
+            }
+            expectSymbol("return");
+            return expression();
+        }
+
+        // expr := term (('+'|'-') term)*
+        private Node expression() {
+            Node left = term();
+            while (true) {
+                if (accept("+")) {
+                    Node right = term();
+                    left = binary(left, right, Double::sum, left.isInt && right.isInt);
+                } else if (accept("-")) {
+                    Node right = term();
+                    left = binary(left, right, (a, b) -> a - b, left.isInt && right.isInt);
+                } else {
+                    return left;
+                }
+            }
+        }
+
+        // term := unary (('*'|'/'|'%'|'//') unary)*
+        private Node term() {
+            Node left = unary();
+            boolean py = dialect == Dialect.PYTHON;
+            while (true) {
+                if (accept("*")) {
+                    Node right = unary();
+                    left = binary(left, right, (a, b) -> a * b, left.isInt && right.isInt);
+                } else if (accept("/")) {
+                    left = binary(left, unary(), py ? Parser::pyDiv : (a, b) -> a / b, false);
+                } else if (accept("%")) {
+                    Node right = unary();
+                    left = binary(left, right, py ? Parser::pyMod : (a, b) -> a % b, left.isInt && right.isInt);
+                } else if (accept("//")) {
+                    Node right = unary();
+                    left = binary(left, right, Parser::pyFloorDiv, left.isInt && right.isInt);
+                } else {
+                    return left;
+                }
+            }
+        }
+
+        // unary := ('-'|'+') unary | power
+        private Node unary() {
+            if (accept("-")) {
+                Node operand = unary();
+                if (operand.isConst) {
+                    return Node.constant(-operand.value, operand.isInt);
+                }
+                DoubleUnaryOperator op = operand.op;
+                return Node.of(x -> -op.applyAsDouble(x), operand.isInt);
+            }
+            if (accept("+")) {
+                return unary();
+            }
+            return power();
+        }
+
+        // power := primary ('**' unary)?   (только Python; правоассоциативна, сильнее унарного минуса слева)
+        private Node power() {
+            Node base = primary();
+            if (accept("**")) {
+                Node exponent = unary();
+                return binary(base, exponent, Parser::pyPow, base.isInt && exponent.isInt);
+            }
+            return base;
+        }
+
+        // primary := number | x | '(' expr ')' | Math.NAME | Math.fn(args) | abs/min/max/pow/round(args)
+        private Node primary() {
+            Token t = peek();
+            if (t.type == NUMBER) {
+                pos++;
+                return Node.constant(t.number, isPython() && t.text.chars().allMatch(Character::isDigit));
+            }
+            if (accept("(")) {
+                Node inner = expression();
+                expectSymbol(")");
+                return inner;
+            }
+            String name = identifier();
+            if (name.equals(param)) {
+                // в Python аргумент — int, в JS — просто число
+                return Node.of(DoubleUnaryOperator.identity(), isPython());
+            }
+            String module = dialect == Dialect.JS ? "Math" : "math";
+            if (name.equals(module) && (dialect == Dialect.JS || mathImported)) {
+                expectSymbol(".");
+                String member = identifier();
+                if (!peek().is("(")) {
+                    return Node.constant(constant(member), false);
+                }
+                return call(module + "." + member, arguments());
+            }
+            if (isPython() && peek().is("(")) {
+                return call(name, arguments());
+            }
+            throw unsupported();
+        }
+
+        private List<Node> arguments() {
+            expectSymbol("(");
+            List<Node> args = new ArrayList<>();
+            if (!accept(")")) {
+                do {
+                    args.add(expression());
+                } while (accept(","));
+                expectSymbol(")");
+            }
+            return args;
+        }
+
+        private double constant(String member) {
+            switch (dialect == Dialect.JS ? member : member.toUpperCase()) {
+                case "PI":
+                    return Math.PI;
+                case "E":
+                    return Math.E;
+                case "TAU":
+                    if (isPython()) {
+                        return 2 * Math.PI;
+                    }
+                    throw unsupported();
+                default:
+                    throw unsupported();
+            }
+        }
+
+        private Node call(String fn, List<Node> args) {
+            int argc = args.size();
+            boolean allInt = args.stream().allMatch(a -> a.isInt);
+            if (argc == 1) {
+                DoubleUnaryOperator f = unaryFunction(fn);
+                if (f != null) {
+                    boolean isInt = fn.equals("round") || fn.equals("math.floor") || fn.equals("math.ceil")
+                            || (fn.equals("abs") && allInt);
+                    return compose(f, args.get(0), isInt);
+                }
+            }
+            if (argc == 2) {
+                DoubleBinaryOperator f = binaryFunction(fn);
+                if (f != null) {
+                    return binary(args.get(0), args.get(1), f, fn.equals("pow") && allInt);
+                }
+            }
+            boolean min = fn.equals("Math.min") || fn.equals("min");
+            boolean max = fn.equals("Math.max") || fn.equals("max");
+            if (argc >= 2 && (min || max)) {
+                DoubleBinaryOperator f = min ? Math::min : Math::max;
+                Node acc = args.get(0);
+                for (int i = 1; i < argc; i++) {
+                    acc = binary(acc, args.get(i), f, allInt);
+                }
+                return acc;
+            }
+            throw unsupported();
+        }
+
+        private DoubleUnaryOperator unaryFunction(String fn) {
+            switch (fn) {
+                case "Math.abs": case "math.fabs": case "abs": return Math::abs;
+                case "Math.sqrt": return Math::sqrt;
+                case "math.sqrt": return a -> pyDomain(a >= 0, Math.sqrt(a));
+                case "Math.sin": case "math.sin": return Math::sin;
+                case "Math.cos": case "math.cos": return Math::cos;
+                case "Math.tan": case "math.tan": return Math::tan;
+                case "Math.asin": case "math.asin": return Math::asin;
+                case "Math.acos": case "math.acos": return Math::acos;
+                case "Math.atan": case "math.atan": return Math::atan;
+                case "Math.exp": case "math.exp": return Math::exp;
+                case "Math.log": return Math::log;
+                case "math.log": return a -> pyDomain(a > 0, Math.log(a));
+                case "math.log10": return a -> pyDomain(a > 0, Math.log10(a));
+                case "math.log2": return a -> pyDomain(a > 0, Math.log(a) / Math.log(2));
+                case "Math.floor": case "math.floor": return Math::floor;
+                case "Math.ceil": case "math.ceil": return Math::ceil;
+                case "Math.round": return Parser::jsRound;
+                case "round": return Math::rint; // Python round(): банковское округление
+                case "math.degrees": return Math::toDegrees;
+                case "math.radians": return Math::toRadians;
+                default: return null;
+            }
+        }
+
+        private DoubleBinaryOperator binaryFunction(String fn) {
+            switch (fn) {
+                case "Math.pow": return Math::pow;
+                case "math.pow": case "pow": return Parser::pyPow;
+                case "Math.atan2": case "math.atan2": return Math::atan2;
+                case "math.hypot": return Math::hypot;
+                case "math.log": return (a, b) -> pyDomain(a > 0 && b > 0 && b != 1, Math.log(a) / Math.log(b));
+                default: return null;
+            }
+        }
+
+        private boolean isPython() {
+            return dialect == Dialect.PYTHON;
+        }
+
+        // ------------------------------------------------------------ сборка дерева
+
+        private static Node binary(Node l, Node r, DoubleBinaryOperator op, boolean isInt) {
+            if (l.isConst && r.isConst) {
+                try {
+                    return Node.constant(op.applyAsDouble(l.value, r.value), isInt);
+                } catch (ArithmeticException e) {
+                    // например, 1 / 0 в Python — ошибка должна возникнуть при вызове, а не при компиляции
+                }
+            }
+            DoubleUnaryOperator lo = l.op;
+            DoubleUnaryOperator ro = r.op;
+            if (r.isConst) {
+                double c = r.value;
+                return Node.of(x -> op.applyAsDouble(lo.applyAsDouble(x), c), isInt);
+            }
+            if (l.isConst) {
+                double c = l.value;
+                return Node.of(x -> op.applyAsDouble(c, ro.applyAsDouble(x)), isInt);
+            }
+            return Node.of(x -> op.applyAsDouble(lo.applyAsDouble(x), ro.applyAsDouble(x)), isInt);
+        }
+
+        private static Node compose(DoubleUnaryOperator f, Node arg, boolean isInt) {
+            if (arg.isConst) {
+                try {
+                    return Node.constant(f.applyAsDouble(arg.value), isInt);
+                } catch (ArithmeticException e) {
+                    // см. binary()
+                }
+            }
+            DoubleUnaryOperator ao = arg.op;
+            return Node.of(x -> f.applyAsDouble(ao.applyAsDouble(x)), isInt);
+        }
+
+        // ------------------------------------------------------------ семантика операций
+
+        private static double jsRound(double a) {
+            if (Double.isNaN(a) || Double.isInfinite(a) || Math.abs(a) >= 0x1p52) {
+                return a;
+            }
+            double r = Math.floor(a + 0.5);
+            // JS: Math.round(-0.4) === -0, а floor(0.49999999999999994 + 0.5) даёт 1
+            if (r - a > 0.5) {
+                r -= 1;
+            }
+            return r == 0 && (a < 0 || 1 / a < 0) ? -0.0 : r;
+        }
+
+        private static double pyDiv(double a, double b) {
+            if (b == 0) {
+                throw new ArithmeticException("division by zero");
+            }
+            return a / b;
+        }
+
+        private static double pyFloorDiv(double a, double b) {
+            if (b == 0) {
+                throw new ArithmeticException("integer division or modulo by zero");
+            }
+            return Math.floor(a / b);
+        }
+
+        private static double pyMod(double a, double b) {
+            if (b == 0) {
+                throw new ArithmeticException("integer division or modulo by zero");
+            }
+            double m = a % b;
+            return (m != 0 && (m < 0) != (b < 0)) ? m + b : m;
+        }
+
+        private static double pyPow(double a, double b) {
+            if (a == 0 && b < 0) {
+                throw new ArithmeticException("0.0 cannot be raised to a negative power");
+            }
+            return Math.pow(a, b);
+        }
+
+        private static double pyDomain(boolean valid, double value) {
+            if (!valid) {
+                throw new ArithmeticException("math domain error");
+            }
+            return value;
+        }
+
+        // ------------------------------------------------------------ токены
+
+        private Token peek() {
+            return tokens.get(pos);
+        }
+
+        private boolean accept(String text) {
+            if (peek().is(text)) {
+                pos++;
+                return true;
+            }
+            return false;
+        }
+
+        private void expectSymbol(String text) {
+            if (!accept(text)) {
+                throw unsupported();
+            }
+        }
+
+        private void expect(int type) {
+            if (peek().type != type) {
+                throw unsupported();
+            }
+        }
+
+        private String identifier() {
+            Token t = peek();
+            if (t.type != IDENT) {
+                throw unsupported();
+            }
+            pos++;
+            return t.text;
+        }
+    }
+
+    /**
+     * Узел дерева: скомпилированная функция плюс то, что известно о ней при компиляции.
+     * isInt — в Python значение узла имеет тип int. Целые числа Python не бывают -0,
+     * а double бывает (0 * -3 == -0.0), поэтому результат таких узлов нормализуется "+ 0.0".
+     */
+    private static final class Node {
+        final DoubleUnaryOperator op;
+        final boolean isInt;
+        final boolean isConst;
+        final double value;
+
+        private Node(DoubleUnaryOperator op, boolean isInt, boolean isConst, double value) {
+            this.op = op;
+            this.isInt = isInt;
+            this.isConst = isConst;
+            this.value = value;
+        }
+
+        static Node of(DoubleUnaryOperator op, boolean isInt) {
+            return new Node(isInt ? x -> op.applyAsDouble(x) + 0.0 : op, isInt, false, 0);
+        }
+
+        static Node constant(double value, boolean isInt) {
+            double v = isInt ? value + 0.0 : value;
+            return new Node(x -> v, isInt, true, v);
+        }
+    }
+}
@@ -1,21 +1,33 @@
 package com.example.webflaxcalc.executions;
 
 
-import javax.script.Invocable;
+import com.example.webflaxcalc.configs.ExecutorConfig;
+
+import javax.script.Compilable;
+import javax.script.CompiledScript;
 import javax.script.ScriptEngine;
 import javax.script.ScriptEngineManager;
 import javax.script.ScriptException;
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
-import java.io.InputStream;
-import java.nio.charset.StandardCharsets;
-import java.time.Duration;
-import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
 import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
 import java.util.concurrent.*;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.BiFunction;
+import java.util.function.DoubleUnaryOperator;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.stream.IntStream;
 
 import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 /**
  * FunctionExecutor — отвечает за выполнение функций, заданных как строки
@@ -23,204 +35,1039 @@ import jakarta.annotation.PreDestroy;
  *
  * Поддерживаемые сценарии:
  *  - JavaScript: текст вида "function(x) { return x * x; }" или "x => x*x"
- *    Выполняется через ScriptEngine (например, Nashorn). В реализации мы создаём
- *    новый ScriptEngine на каждый вызов (чтобы не делить state между потоками).
+ *    Выполняется через ScriptEngine (например, Nashorn). Движок создаётся один раз,
+ *    текст функции компилируется (Compilable) при первом вызове и кэшируется;
+ *    каждый вызов исполняет готовый CompiledScript в движке, взятом из JsEnginePool
+ *    (у каждого движка свои Bindings, поэтому state не делится между потоками).
  *
  *  - Python: текст вида "def f(x): return ..." или "lambda x: x + 1"
- *    Выполняется через внешний интерпретатор python3 / python (ProcessBuilder).
+ *    Выполняется резидентными процессами python3 / python (PythonWorkerPool):
+ *    функция загружается в процесс один раз, затем по stdin/stdout передаются только x и результат.
+ *
+ *  - Несколько JS-функций с одним аргументом можно выполнить одним вызовом движка
+ *    ({@link #executeJsAllAsync(List, int)}): одна задача, один таймаут, один движок из пула.
+ *
+ *  - Батч: одна функция для массива x ({@link #executeJsBatchAsync}, {@link #executePythonBatchAsync}) —
+ *    один цикл внутри JS-движка или один запрос к python-воркеру вместо вызова на каждый x.
+ *
+ *  - Простые арифметические функции обоих языков (x * x, lambda x: x + 10, вызовы Math/math)
+ *    компилируются в Java-код (ExpressionCompiler) и выполняются без движка и процессов.
  *
  * Принципы:
- *  - Есть общий таймаут (TIMEOUT_MS). По истечении таймаута возвращаем ошибку.
- *  - Для Python используем пул потоков, чтобы не блокировать главный поток приложения.
- *  - Для JS создаём engine внутри вызывающего потока,
+ *  - Есть общий таймаут выполнения (TIMEOUT_MS). По истечении таймаута возвращаем ошибку.
+ *    Основной API асинхронный (execute*Async возвращают CompletableFuture): таймаут
+ *    отсчитывает общий таймер, поэтому вызывающий поток не блокируется.
+ *  - Вызовы выполняются в bulkhead'ах ({@link Bulkhead}) — отдельных ограниченных пулах
+ *    на язык (по умолчанию) или на функцию (bulkheads = "function"). Очередь ограничена:
+ *    вызов сверх неё, как и вызов, прождавший в очереди дольше queueTimeoutMs, сразу
+ *    получает ошибку "... rejected: ..." (ExecutionResult.rejected). TIMEOUT_MS
+ *    отсчитывается с начала выполнения, ожидание в очереди в него не входит.
+ *  - Время измеряется монотонными часами (System.nanoTime) по фазам: ожидание в очереди
+ *    (queueNanos), компиляция / запуск процесса (compileNanos) и выполнение (execNanos).
+ *  - future.cancel() и таймаут завершают future сразу. Python-процесс при этом убивается.
+ *    JS-вызов остановить нельзя: Nashorn не проверяет флаг прерывания, поэтому уже начатый
+ *    вызов (в т.ч. зацикленный) держит поток bulkhead'а и движок пула до своего завершения.
+ *    Число таких потоков ограничено размером JS-bulkhead'а; не начатые вызовы отменяются.
+ *  - Для JS движок на время вызова монопольно принадлежит одному потоку,
  *    чтобы избежать проблем конкурентного доступа и глобальных Bindings.
  *
  * Поля:
- *  - pythonPool — ExecutorService для запусков Python.
- *  - jsExecutor — ExecutorService для выполнения JS callables с контролем таймаута.
+ *  - jsBulkhead, pythonBulkhead — bulkhead'ы языков; functionBulkheads — bulkhead'ы функций.
+ *  - pythonWorkers — пул резидентных python-процессов.
+ *  - jsPool — пул прогретых JS-движков.
+ *  - timeoutTimer — общий таймер таймаутов.
+ *  - callPermits — ограничение параллелизма в режиме виртуальных потоков (иначе null).
+ *  - resultCache — общий кэш результатов чистых функций (null, если выключен).
+ *
+ * Режим virtualThreads (JDK 21+): bulkhead'ы запускают каждый вызов на виртуальном
+ * потоке, а общее число одновременных вызовов ограничивает семафор, а не число
+ * платформенных потоков. Проект собирается под Java 17, поэтому фабрика виртуальных
+ * потоков берётся через reflection; на старом JDK остаются обычные пулы (с предупреждением в лог).
  */
 public class FunctionExecutor {
 
+    private static final Logger log = LoggerFactory.getLogger(FunctionExecutor.class);
+
     /** Максимальное время выполнения функции в миллисекундах. */
     public static final long TIMEOUT_MS = 2000;
 
-    /** Пул потоков, в котором выполняются задачи Python (каждая задача запускает процесс python). */
-    private final ExecutorService pythonPool;
+    /** Bulkhead для задач Python (по потоку на python-воркер). */
+    private final Bulkhead pythonBulkhead;
+
+    /** Резидентные процессы python, в которые загружаются функции. */
+    private final PythonWorkerPool pythonWorkers;
+
+    /** Bulkhead для JS-вызовов (по потоку на движок пула). */
+    private final Bulkhead jsBulkhead;
+
+    /**
+     * Bulkhead'ы отдельных функций (режим bulkheads = "function"); ключ — язык и текст функции.
+     * Не больше maxFunctionBulkheads: тексты функций приходят от клиентов (регистрация, reload),
+     * поэтому для новой функции сверх лимита закрывается простаивающий bulkhead (см. {@link #bulkhead}).
+     */
+    private final ConcurrentMap<String, Bulkhead> functionBulkheads = new ConcurrentHashMap<>();
+
+    /** Номер следующего bulkhead'а функции (для имени; под монитором functionBulkheads). */
+    private int functionBulkheadSeq;
+
+    /** Отдельный bulkhead на каждую функцию вместо общего на язык. */
+    private final boolean perFunctionBulkheads;
+
+    /** Размеры bulkhead'а одной функции и очереди любого bulkhead'а, лимит числа bulkhead'ов функций. */
+    private final int functionThreads;
+    private final int maxFunctionBulkheads;
+    private final int bulkheadQueue;
+
+    /** Сколько вызов может ждать в очереди bulkhead'а, прежде чем будет отклонён. */
+    private final long queueTimeoutMs;
+
+    /** Общий executor виртуальных потоков (режим virtualThreads), иначе null. */
+    private final ExecutorService virtualExecutor;
+
+    /**
+     * Общий таймер таймаутов: один поток на весь исполнитель вместо потока,
+     * который на каждый вызов ждёт в future.get(TIMEOUT_MS).
+     */
+    private final ScheduledThreadPoolExecutor timeoutTimer;
+
+    /**
+     * Разрешения на одновременные вызовы в режиме виртуальных потоков: виртуальные потоки
+     * создаются без ограничений, поэтому параллелизм ограничиваем здесь. null — обычные пулы.
+     */
+    private final Semaphore callPermits;
+
+    /** Имя переменной, через которую аргумент передаётся в скомпилированный JS-скрипт. */
+    private static final String JS_ARG = "__x";
+
+    /** Имя переменной с Java-массивом, в который слитный скрипт пишет результаты и время функций. */
+    private static final String JS_OUT = "__out";
+
+    /** Имя переменной с Java-массивом аргументов батча. */
+    private static final String JS_XS = "__xs";
+
+    /**
+     * Общий Nashorn-движок: используется только для компиляции и создания Bindings.
+     * null, если Nashorn отсутствует в classpath.
+     */
+    private final ScriptEngine jsEngine;
+
+    /** Пул прогретых движков с изолированными Bindings; null, если Nashorn недоступен. */
+    private final JsEnginePool jsPool;
+
+    /**
+     * Кэш скомпилированных JS-функций. Ключ — текст функции (ConcurrentHashMap
+     * раскладывает ключи по hashCode текста, equals защищает от коллизий).
+     */
+    private final ConcurrentMap<String, CompiledJs> jsScripts = new ConcurrentHashMap<>();
+
+    /** Кэш скриптов, вычисляющих JS-функцию для массива x (батч); ключ — текст функции. */
+    private final ConcurrentMap<String, CompiledJs> jsBatchScripts = new ConcurrentHashMap<>();
+
+    /** Кэш слитных скриптов для нескольких JS-функций; ключ — тексты функций через '\0'. */
+    private final ConcurrentMap<String, CompiledJs> jsFusedScripts = new ConcurrentHashMap<>();
 
     /**
-     * Пул для выполнения JS-вызовов с возможностью контролировать таймаут.
-     * Мы используем отдельный пул, чтобы не создавать поток для каждого таймаута.
+     * Функции, скомпилированные в Java-код ({@link ExpressionCompiler}); пустой Optional —
+     * функция вне поддерживаемого подмножества и выполняется интерпретатором.
      */
-    private final ExecutorService jsExecutor;
+    private final ConcurrentMap<String, Optional<DoubleUnaryOperator>> nativeJs = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, Optional<DoubleUnaryOperator>> nativePython = new ConcurrentHashMap<>();
+
+    /** Результаты чистых функций, общие для всех запросов; null — кэш выключен. */
+    private final ResultCache resultCache;
+
+    /** Включена ли нативная компиляция простых выражений. */
+    private final boolean nativeExpressions;
 
     /** Флаг, чтобы при уничтожении корректно очистить ресурсы только один раз. */
     private final AtomicBoolean closed = new AtomicBoolean(false);
 
     public FunctionExecutor() {
-        // 4 потокa для одновременных вызовов Python (настраиваемо)
-        this.pythonPool = Executors.newFixedThreadPool(4, r -> {
-            Thread t = new Thread(r, "python-exec-worker");
-            t.setDaemon(true);
-            return t;
-        });
+        this(new ExecutorConfig());
+    }
+
+    /**
+     * @throws IllegalArgumentException неизвестный режим bulkheads (проверяется до запуска пулов)
+     */
+    public FunctionExecutor(ExecutorConfig settings) {
+        this.perFunctionBulkheads = perFunctionBulkheads(settings.getBulkheads());
+        this.pythonWorkers = new PythonWorkerPool(settings.getPythonWorkers(), settings.getPythonHealthCheckMs());
+
+        this.functionThreads = Math.max(1, settings.getFunctionThreads());
+        this.maxFunctionBulkheads = Math.max(1, settings.getMaxFunctionBulkheads());
+        this.bulkheadQueue = Math.max(1, settings.getBulkheadQueue());
+        this.queueTimeoutMs = Math.max(1, settings.getQueueTimeoutMs());
 
-        // Cached pool для JS callables (может расти при нагрузке)
-        this.jsExecutor = Executors.newCachedThreadPool(r -> {
-            Thread t = new Thread(r, "js-exec-worker");
+        this.virtualExecutor = settings.isVirtualThreads() ? newVirtualThreadExecutor() : null;
+        // один executor виртуальных потоков на все bulkhead'ы, общий параллелизм ограничен семафором
+        this.callPermits = virtualExecutor == null ? null : new Semaphore(Math.max(1, settings.getMaxConcurrentCalls()));
+
+        // по потоку на каждый python-воркер (настраиваемо, по умолчанию 4) и на каждый JS-движок
+        this.pythonBulkhead = newBulkhead("python", settings.getPythonWorkers());
+        this.jsBulkhead = newBulkhead("js", settings.getJsThreads() > 0 ? settings.getJsThreads() : settings.getJsPoolMax());
+
+        this.timeoutTimer = new ScheduledThreadPoolExecutor(1, r -> {
+            Thread t = new Thread(r, "function-timeout-timer");
             t.setDaemon(true);
             return t;
         });
+        // отменённые (не сработавшие) таймауты сразу удаляются из очереди таймера
+        timeoutTimer.setRemoveOnCancelPolicy(true);
+
+        this.nativeExpressions = settings.isNativeExpressions();
+        this.resultCache = settings.getResultCacheSize() > 0 ? new ResultCache(settings.getResultCacheSize()) : null;
+
+        // ScriptEngineManager сканирует classpath через ServiceLoader — делаем это один раз
+        this.jsEngine = new ScriptEngineManager().getEngineByName("nashorn");
+        this.jsPool = jsEngine == null ? null
+                : new JsEnginePool(jsEngine, settings.getJsPoolMin(), settings.getJsPoolMax(), settings.getJsPoolIdleMs());
+    }
+
+    /** Режим bulkhead'ов: "language" (и null) — по языку, "function" — на каждую функцию. */
+    private static boolean perFunctionBulkheads(String mode) {
+        if (mode == null || "language".equalsIgnoreCase(mode.trim())) {
+            return false;
+        }
+        if ("function".equalsIgnoreCase(mode.trim())) {
+            return true;
+        }
+        throw new IllegalArgumentException("unknown bulkheads: " + mode + " (expected language or function)");
     }
 
     /**
-     * Выполнить JavaScript-функцию. Внутри используется ScriptEngine (Nashorn),
-     * создающийся локально для каждой задачи — это простая, безопасная (по части threading)
-     * стратегия для тестового задания.
+     * Выполнить JavaScript-функцию. Простая арифметика выполняется нативно
+     * (см. {@link ExpressionCompiler}). Иначе текст функции компилируется один раз
+     * (см. {@link #compileJs(String)}), дальше вызов только исполняет готовый скрипт
+     * в движке из пула — движок занят одним потоком, пока вызов не завершится.
      *
      * @param funcText текст функции на JS (например, "function(x){ return x*x; }")
      * @param x входной int-аргумент
      * @return ExecutionResult (ok=true + value + timeMs) или (ok=false + error)
      */
     public ExecutionResult executeJs(String funcText, int x) {
-        // Callable, который инстанцирует ScriptEngine и выполняет функцию
-        Callable<ExecutionResult> task = () -> {
-            // создаём новый движок на каждый вызов — это защищает от глобальных state-коллизий
-            ScriptEngine engine = new ScriptEngineManager().getEngineByName("nashorn");
-            if (engine == null) {
-                return ExecutionResult.error("No JS engine available (nashorn missing)");
+        return executeJsAsync(funcText, x).join();
+    }
+
+    /**
+     * Асинхронный вариант {@link #executeJs(String, int)}: вызывающий поток не блокируется,
+     * таймаут отсчитывает общий таймер. Future всегда завершается нормально — ошибки и
+     * таймаут приходят как ExecutionResult.error.
+     */
+    public CompletableFuture<ExecutionResult> executeJsAsync(String funcText, int x) {
+        return executeJsAsync(funcText, x, false);
+    }
+
+    /**
+     * То же, но для чистой функции (pure = true) результат берётся из общего кэша
+     * и попадает в него после вычисления (см. {@link ResultCache}).
+     */
+    public CompletableFuture<ExecutionResult> executeJsAsync(String funcText, int x, boolean pure) {
+        ExecutionResult fast = executeNative(funcText, ExpressionCompiler.Dialect.JS, x);
+        if (fast != null) {
+            return CompletableFuture.completedFuture(fast);
+        }
+        return cached("JS", funcText, x, pure, () -> submit(bulkhead("JS", funcText), () -> runJs(funcText, x), "JS", null));
+    }
+
+    /**
+     * Выполнить несколько JS-функций с одним аргументом x одним вызовом движка.
+     *
+     * Функции, скомпилированные в Java-код, выполняются сразу; остальные объединяются в один
+     * скрипт (см. {@link #compileJsFused(List)}) и исполняются одной задачей JS-bulkhead'а подряд,
+     * поэтому таймаут вызова — {@link #batchTimeoutMs(int)} по числу функций в скрипте.
+     * Время каждой функции измеряется внутри скрипта отдельно.
+     * Таймаут или отмена относятся ко всему вызову: все его функции получают ошибку.
+     *
+     * @param funcTexts тексты JS-функций
+     * @param x входной int-аргумент
+     * @return результаты в порядке funcTexts
+     */
+    public CompletableFuture<List<ExecutionResult>> executeJsAllAsync(List<String> funcTexts, int x) {
+        ExecutionResult[] results = new ExecutionResult[funcTexts.size()];
+        List<String> engineTexts = new ArrayList<>();
+        for (int i = 0; i < results.length; i++) {
+            results[i] = executeNative(funcTexts.get(i), ExpressionCompiler.Dialect.JS, x);
+            if (results[i] == null) {
+                engineTexts.add(funcTexts.get(i));
+            }
+        }
+        if (engineTexts.isEmpty()) {
+            return CompletableFuture.completedFuture(Arrays.asList(results));
+        }
+
+        CompletableFuture<List<ExecutionResult>> engineResults;
+        if (engineTexts.size() == 1) {
+            engineResults = thenApplyCancellable(executeJsAsync(engineTexts.get(0), x), List::of);
+        } else if (perFunctionBulkheads) {
+            // у каждой функции свой bulkhead — слитный вызов занял бы чужой
+            engineResults = allOf(engineTexts.stream().map(text -> executeJsAsync(text, x)).toList());
+        } else {
+            engineResults = submit(jsBulkhead, () -> runJsFused(engineTexts, x), "JS", null, batchTimeoutMs(engineTexts.size()),
+                    error -> Collections.nCopies(engineTexts.size(), error),
+                    (rs, queueNanos) -> rs.stream().map(r -> r.withQueueNanos(queueNanos)).toList());
+        }
+        return thenApplyCancellable(engineResults, fromEngine -> {
+            int next = 0;
+            for (int i = 0; i < results.length; i++) {
+                if (results[i] == null) {
+                    results[i] = fromEngine.get(next++);
+                }
+            }
+            return Arrays.asList(results);
+        });
+    }
+
+    /**
+     * Вычислить JS-функцию для каждого x из xs одним циклом внутри движка.
+     *
+     * Весь батч — одна задача bulkhead'а с одним таймаутом на всех: {@link #batchTimeoutMs(int)},
+     * то есть TIMEOUT_MS на каждый элемент, который считается не нативно, — столько же, сколько
+     * получили бы отдельные вызовы. Если батч не уложился, все его элементы получают ошибку таймаута.
+     *
+     * @param funcText текст функции на JS
+     * @param xs аргументы
+     * @return результаты и ошибки по элементам
+     */
+    public CompletableFuture<BatchResult> executeJsBatchAsync(String funcText, int[] xs) {
+        return executeBatch(funcText, ExpressionCompiler.Dialect.JS, xs, rest ->
+                submit(bulkhead("JS", funcText), () -> runJsBatch(funcText, rest), "JS", null, batchTimeoutMs(rest.length),
+                        error -> BatchResult.failed(rest, error), BatchResult::withQueueNanos));
+    }
+
+    /** Синхронный вариант {@link #executeJsBatchAsync(String, int[])} для диапазона x. */
+    public BatchResult executeJsBatch(String funcText, IntStream xs) {
+        return executeJsBatchAsync(funcText, xs.toArray()).join();
+    }
+
+    /**
+     * Вычислить Python-функцию для каждого x из xs одним запросом к воркеру
+     * (см. {@link #executeJsBatchAsync(String, int[])} про таймаут).
+     */
+    public CompletableFuture<BatchResult> executePythonBatchAsync(String funcText, int[] xs) {
+        return executeBatch(funcText, ExpressionCompiler.Dialect.PYTHON, xs, rest -> {
+            PythonCall<BatchResult> call = new PythonCall<>((w, startupNanos) -> {
+                long start = System.nanoTime();
+                List<PythonWorker.Reply> replies = w.callBatch(pythonWorkers.functionId(funcText), funcText, rest);
+                long execNanos = System.nanoTime() - start;
+                double[] values = new double[rest.length];
+                String[] errors = new String[rest.length];
+                for (int i = 0; i < rest.length; i++) {
+                    PythonWorker.Reply reply = replies.get(i);
+                    values[i] = Double.NaN;
+                    if (!reply.ok) {
+                        errors[i] = "Python error: " + reply.text;
+                        continue;
+                    }
+                    try {
+                        values[i] = Double.parseDouble(reply.text.trim());
+                    } catch (NumberFormatException e) {
+                        errors[i] = "Python run failed: " + e;
+                    }
+                }
+                return new BatchResult(rest, values, errors, startupNanos, execNanos);
+            }, error -> BatchResult.failed(rest, error));
+            return submit(bulkhead("Python", funcText), call, "Python", call::abort, batchTimeoutMs(rest.length),
+                    error -> BatchResult.failed(rest, error), BatchResult::withQueueNanos);
+        });
+    }
+
+    /** Синхронный вариант {@link #executePythonBatchAsync(String, int[])} для диапазона x. */
+    public BatchResult executePythonBatch(String funcText, IntStream xs) {
+        return executePythonBatchAsync(funcText, xs.toArray()).join();
+    }
+
+    /**
+     * Общая часть батча: элементы, которые считаются нативно, вычисляются сразу,
+     * остальные одним вызовом interpreted, результаты сливаются в порядке xs.
+     */
+    private CompletableFuture<BatchResult> executeBatch(String funcText, ExpressionCompiler.Dialect dialect, int[] xs,
+                                                        Function<int[], CompletableFuture<BatchResult>> interpreted) {
+        long start = System.nanoTime();
+        double[] values = new double[xs.length];
+        String[] errors = new String[xs.length];
+        int[] restIndex = new int[xs.length];
+        int restCount = 0;
+        for (int i = 0; i < xs.length; i++) {
+            ExecutionResult fast = executeNative(funcText, dialect, xs[i]);
+            if (fast != null) {
+                values[i] = fast.value;
+            } else {
+                restIndex[restCount++] = i;
+            }
+        }
+        long nativeNanos = System.nanoTime() - start;
+        if (restCount == 0) {
+            return CompletableFuture.completedFuture(new BatchResult(xs, values, errors, 0, nativeNanos));
+        }
+
+        int[] rest = new int[restCount];
+        for (int k = 0; k < restCount; k++) {
+            rest[k] = xs[restIndex[k]];
+        }
+        int n = restCount;
+        return thenApplyCancellable(interpreted.apply(rest), r -> {
+            for (int k = 0; k < n; k++) {
+                values[restIndex[k]] = r.values[k];
+                errors[restIndex[k]] = r.errors[k];
             }
+            return new BatchResult(xs, values, errors, r.compileNanos, nativeNanos + r.execNanos).withQueueNanos(r.queueNanos);
+        });
+    }
+
+    /**
+     * Выполнить батч-скрипт в движке из пула (в потоке bulkhead'а). Элементы, на которых функция
+     * бросила исключение или вернула не число, пересчитываются отдельным вызовом — ради того же
+     * текста ошибки, что у {@link #runJs(String, int)}.
+     */
+    private BatchResult runJsBatch(String funcText, int[] xs) {
+        if (jsEngine == null) {
+            return BatchResult.failed(xs, ExecutionResult.error("No JS engine available (nashorn missing)"));
+        }
+        long compileStart = System.nanoTime();
+        CompiledJs batch = compileJsBatch(funcText);
+        if (batch.error != null) {
+            return BatchResult.failed(xs, ExecutionResult.error(batch.error));
+        }
 
+        long start = System.nanoTime();
+        long compileNanos = start - compileStart;
+        Object[] out = new Object[xs.length];
+        try {
+            JsEnginePool.PooledEngine engine = jsPool.acquire();
             try {
-                Instant start = Instant.now();
-                // объявляем функцию в контексте движка
-                // безопасно делать eval() на user-provided код — НО: потенциально небезопасно в проде
-                engine.eval("var __userFunc = " + funcText + ";");
-                Invocable inv = (Invocable) engine;
-                Object result = inv.invokeFunction("__userFunc", x);
-                Instant end = Instant.now();
-                double val = toDouble(result);
-                return ExecutionResult.ok(val, Duration.between(start, end).toMillis());
-            } catch (ScriptException se) {
-                return ExecutionResult.error("JS error: " + se.getMessage());
-            } catch (NoSuchMethodException nsme) {
-                return ExecutionResult.error("JS invocation error: " + nsme.getMessage());
-            } catch (Throwable t) {
-                return ExecutionResult.error("JS exception: " + t.toString());
+                engine.eval(batch.script, JS_XS, xs, JS_OUT, out);
+            } finally {
+                jsPool.release(engine);
             }
-        };
+        } catch (ScriptException se) {
+            return BatchResult.failed(xs, ExecutionResult.error("JS error: " + se.getMessage()));
+        } catch (Throwable t) {
+            return BatchResult.failed(xs, ExecutionResult.error("JS exception: " + t.toString()));
+        }
+        long execNanos = System.nanoTime() - start;
+
+        double[] values = new double[xs.length];
+        String[] errors = new String[xs.length];
+        for (int i = 0; i < xs.length; i++) {
+            ExecutionResult r = null;
+            if (out[i] != null) {
+                try {
+                    r = ExecutionResult.ok(toDouble(out[i]), 0, 0);
+                } catch (NumberFormatException ignored) {
+                    // не число — отдельный вызов вернёт свою ошибку
+                }
+            }
+            if (r == null) {
+                r = runJs(funcText, xs[i]);
+            }
+            values[i] = r.value;
+            errors[i] = r.error;
+        }
+        return new BatchResult(xs, values, errors, compileNanos, execNanos);
+    }
+
+    /**
+     * source.thenApply(fn), но отмена результата отменяет и source — иначе отмена
+     * (например, при отключении клиента) не дошла бы до задачи в пуле.
+     */
+    private static <T, R> CompletableFuture<R> thenApplyCancellable(CompletableFuture<T> source, Function<T, R> fn) {
+        CompletableFuture<R> mapped = source.thenApply(fn);
+        mapped.whenComplete((r, e) -> {
+            if (mapped.isCancelled()) {
+                source.cancel(true);
+            }
+        });
+        return mapped;
+    }
 
-        Future<ExecutionResult> future = jsExecutor.submit(task);
+    /** Дождаться всех future; отмена результата отменяет каждое из них. */
+    private static <T> CompletableFuture<List<T>> allOf(List<CompletableFuture<T>> futures) {
+        CompletableFuture<List<T>> all = CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[0]))
+                .thenApply(ignored -> futures.stream().map(CompletableFuture::join).toList());
+        all.whenComplete((r, e) -> {
+            if (all.isCancelled()) {
+                futures.forEach(f -> f.cancel(true));
+            }
+        });
+        return all;
+    }
+
+    /**
+     * Выполнить слитный скрипт в движке из пула (в потоке bulkhead'а). Функцию, которая
+     * бросила исключение или вернула не число, выполняем ещё раз отдельно — так текст
+     * ошибки совпадает с {@link #runJs(String, int)}. Это редкий путь.
+     */
+    private List<ExecutionResult> runJsFused(List<String> funcTexts, int x) {
+        if (jsEngine == null) {
+            return Collections.nCopies(funcTexts.size(), ExecutionResult.error("No JS engine available (nashorn missing)"));
+        }
+        long compileStart = System.nanoTime();
+        CompiledJs fused = compileJsFused(funcTexts);
+        long compileNanos = (System.nanoTime() - compileStart) / funcTexts.size();
+        List<ExecutionResult> results = new ArrayList<>(funcTexts.size());
+        if (fused.script == null) {
+            // какая-то функция не компилируется — выполним по отдельности, чтобы ошибка была у неё одной
+            for (String text : funcTexts) {
+                results.add(runJs(text, x));
+            }
+            return results;
+        }
+
+        Object[] out = new Object[funcTexts.size() * 2];
         try {
-            return future.get(TIMEOUT_MS, TimeUnit.MILLISECONDS);
-        } catch (TimeoutException te) {
-            future.cancel(true);
-            return ExecutionResult.error(String.format(Locale.ROOT, "JS timeout > %d ms", TIMEOUT_MS));
-        } catch (InterruptedException ie) {
-            Thread.currentThread().interrupt();
-            return ExecutionResult.error("JS interrupted");
-        } catch (ExecutionException ee) {
-            return ExecutionResult.error("JS execution failed: " + ee.getCause());
+            JsEnginePool.PooledEngine engine = jsPool.acquire();
+            try {
+                engine.eval(fused.script, JS_ARG, x, JS_OUT, out);
+            } finally {
+                jsPool.release(engine);
+            }
+        } catch (ScriptException se) {
+            return Collections.nCopies(funcTexts.size(), ExecutionResult.error("JS error: " + se.getMessage()));
+        } catch (Throwable t) {
+            return Collections.nCopies(funcTexts.size(), ExecutionResult.error("JS exception: " + t.toString()));
         }
+
+        for (int i = 0; i < funcTexts.size(); i++) {
+            Object value = out[2 * i];
+            Object time = out[2 * i + 1];
+            ExecutionResult r = null;
+            if (value != null && time instanceof Number && ((Number) time).doubleValue() >= 0) {
+                try {
+                    r = ExecutionResult.ok(toDouble(value), compileNanos, ((Number) time).longValue());
+                } catch (NumberFormatException ignored) {
+                    // не число — пусть отдельный вызов вернёт свою ошибку
+                }
+            }
+            results.add(r != null ? r : runJs(funcTexts.get(i), x));
+        }
+        return results;
     }
 
     /**
-     * Выполнить Python-функцию.
-     * Мы запускаем внешний процесс python3 (или python) с -c '...' и читаем stdout.
+     * Подготовить функцию заранее, без вызова: скомпилировать её в Java-код (ExpressionCompiler),
+     * а если не получилось — в CompiledScript (JS) или загрузить в python-процесс (Python).
+     * Результат попадает в те же кэши, что и при первом вызове, поэтому вызовы потом не разбирают
+     * текст заново. Ошибка компиляции или загрузки возвращается как ExecutionResult.error.
      *
-     * Поддерживаем два формата функции:
-     *  - "def f(x): ..." — тогда мы вызываем f(x) внутри скрипта
-     *  - "lambda x: ..." — создаём f = <lambda> и печатаем f(x)
+     * @param funcText текст функции
+     * @param js true — JavaScript, false — Python
+     * @return ok (value = 0, compileNanos — время подготовки) или ошибка
+     */
+    public CompletableFuture<ExecutionResult> prepareAsync(String funcText, boolean js) {
+        if (funcText == null || funcText.isBlank()) {
+            return CompletableFuture.completedFuture(ExecutionResult.error("empty function"));
+        }
+        long start = System.nanoTime();
+        ExpressionCompiler.Dialect dialect = js ? ExpressionCompiler.Dialect.JS : ExpressionCompiler.Dialect.PYTHON;
+        if (nativeExpressions && prepareNative(funcText, dialect)) {
+            return CompletableFuture.completedFuture(ExecutionResult.ok(0, System.nanoTime() - start, 0));
+        }
+        if (js) {
+            if (jsEngine == null) {
+                return CompletableFuture.completedFuture(ExecutionResult.error("No JS engine available (nashorn missing)"));
+            }
+            CompiledJs compiled = jsScripts.get(funcText);
+            if (compiled == null) {
+                compiled = compileJsScript(funcText);
+                if (compiled.error == null) {
+                    jsScripts.putIfAbsent(funcText, compiled);
+                }
+            }
+            return CompletableFuture.completedFuture(compiled.error != null
+                    ? ExecutionResult.error(compiled.error)
+                    : ExecutionResult.ok(0, System.nanoTime() - start, 0));
+        }
+        PythonCall<ExecutionResult> call = new PythonCall<>((w, startupNanos) -> {
+            long loadStart = System.nanoTime();
+            int fnId = pythonWorkers.functionId(funcText);
+            PythonWorker.Reply reply = w.load(fnId, funcText);
+            if (!reply.ok) {
+                pythonWorkers.forget(funcText, fnId);
+                return ExecutionResult.error("Python error: " + reply.text);
+            }
+            return ExecutionResult.ok(0, startupNanos + System.nanoTime() - loadStart, 0);
+        }, Function.identity());
+        return submit(bulkhead("Python", funcText), call, "Python", call::abort);
+    }
+
+    /**
+     * Скомпилировать функцию в Java-код для prepare. В кэш попадает только удачная компиляция:
+     * prepare вызывают для текстов от клиентов (регистрация, reload), и отвергнутый текст
+     * не должен оставаться в кэшах исполнителя.
      *
-     * @param funcText текст Python-функции
-     * @param x входной int-аргумент
-     * @return ExecutionResult
+     * @return true, если функция выполняется нативно
      */
-    public ExecutionResult executePython(String funcText, int x) {
-        Future<ExecutionResult> f = pythonPool.submit(() -> runPythonProcess(funcText, x));
+    private boolean prepareNative(String funcText, ExpressionCompiler.Dialect dialect) {
+        ConcurrentMap<String, Optional<DoubleUnaryOperator>> cache =
+                dialect == ExpressionCompiler.Dialect.JS ? nativeJs : nativePython;
+        Optional<DoubleUnaryOperator> known = cache.get(funcText);
+        if (known != null) {
+            return known.isPresent();
+        }
+        DoubleUnaryOperator fn = ExpressionCompiler.compile(funcText, dialect);
+        if (fn != null) {
+            cache.putIfAbsent(funcText, Optional.of(fn));
+        }
+        return fn != null;
+    }
+
+    /** Сколько таймеров (очереди и выполнения) ждут срабатывания в общем таймере. */
+    int pendingTimers() {
+        return timeoutTimer.getQueue().size();
+    }
+
+    /** Сколько функций сейчас в кэшах исполнителя (скрипты, нативные функции, номера python-функций). */
+    int cachedFunctions() {
+        return jsScripts.size() + jsBatchScripts.size() + jsFusedScripts.size()
+                + nativeJs.size() + nativePython.size() + pythonWorkers.functionCount();
+    }
+
+    /** Синхронный вариант {@link #prepareAsync(String, boolean)}. */
+    public ExecutionResult prepare(String funcText, boolean js) {
+        return prepareAsync(funcText, js).join();
+    }
+
+    /**
+     * Выполнить JS-функцию в движке из пула (в потоке bulkhead'а).
+     */
+    private ExecutionResult runJs(String funcText, int x) {
+        if (jsEngine == null) {
+            return ExecutionResult.error("No JS engine available (nashorn missing)");
+        }
+
         try {
-            return f.get(TIMEOUT_MS, TimeUnit.MILLISECONDS);
-        } catch (TimeoutException te) {
-            f.cancel(true);
-            return ExecutionResult.error(String.format(Locale.ROOT, "Python timeout > %d ms", TIMEOUT_MS));
-        } catch (InterruptedException ie) {
-            Thread.currentThread().interrupt();
-            return ExecutionResult.error("Python interrupted");
-        } catch (ExecutionException ee) {
-            return ExecutionResult.error("Python execution failed: " + ee.getCause());
+            long compileStart = System.nanoTime();
+            CompiledJs compiled = compileJs(funcText);
+            if (compiled.error != null) {
+                return ExecutionResult.error(compiled.error);
+            }
+            long start = System.nanoTime();
+            Object result;
+            JsEnginePool.PooledEngine engine = jsPool.acquire();
+            try {
+                result = engine.eval(compiled.script, JS_ARG, x);
+            } finally {
+                jsPool.release(engine);
+            }
+            double val = toDouble(result);
+            return ExecutionResult.ok(val, start - compileStart, System.nanoTime() - start);
+        } catch (ScriptException se) {
+            return ExecutionResult.error("JS error: " + se.getMessage());
+        } catch (Throwable t) {
+            return ExecutionResult.error("JS exception: " + t.toString());
         }
     }
 
     /**
-     * Внутренняя реализация запуска python-процесса.
+     * Запустить задачу в bulkhead'е и вернуть future с её результатом.
+     *
+     * Таймаут не держит поток в future.get(): общий таймер через TIMEOUT_MS после начала
+     * выполнения завершает future ошибкой таймаута, выставляет задаче флаг прерывания и вызывает
+     * onAbort, если задан. Если задача успела раньше — таймер отменяется. Флаг прерывания
+     * останавливает только ожидание (очередь, пул движков, ответ python-процесса): начатый
+     * JS-вызов Nashorn доработает до конца, python-вызов останавливает onAbort.
+     *
+     * Очередь ограничена: если bulkhead заполнен или задача не началась за queueTimeoutMs,
+     * future сразу завершается ошибкой "<lang> rejected: ..." (ExecutionResult.rejected).
+     * Время ожидания в очереди попадает в результат отдельно (ExecutionResult.queueNanos).
+     *
+     * Отмена возвращённого future (например, клиент отключился и Reactor отменил Mono.fromFuture)
+     * действует так же, как таймаут: задаче выставляется флаг прерывания (или она не начнётся вовсе),
+     * вызывается onAbort.
+     *
+     * @param bulkhead bulkhead, в котором выполняется задача
+     * @param task задача; исключения внутри неё перехватываются самой задачей
+     * @param lang "JS" или "Python" — для сообщений об ошибках
+     * @param onAbort дополнительное действие при таймауте или отмене (например, убить python-процесс), может быть null
+     */
+    private CompletableFuture<ExecutionResult> submit(Bulkhead bulkhead, Callable<ExecutionResult> task,
+                                                      String lang, Runnable onAbort) {
+        return submit(bulkhead, task, lang, onAbort, TIMEOUT_MS, Function.identity(), ExecutionResult::withQueueNanos);
+    }
+
+    /** Таймаут батча из n элементов: TIMEOUT_MS на элемент, как у n отдельных вызовов. */
+    static long batchTimeoutMs(int n) {
+        return TIMEOUT_MS * Math.max(1, n);
+    }
+
+    /**
+     * То же для задачи с произвольным результатом (например, списком результатов слитного вызова).
+     *
+     * @param timeoutMs таймаут выполнения (TIMEOUT_MS, для батчей — {@link #batchTimeoutMs(int)})
+     * @param onError как представить ошибку (таймаут, отказ bulkhead'а) результатом задачи
+     * @param withQueueNanos как добавить к результату время ожидания в очереди
      */
-    private ExecutionResult runPythonProcess(String funcText, int x) {
+    private <T> CompletableFuture<T> submit(Bulkhead bulkhead, Callable<T> task, String lang, Runnable onAbort,
+                                            long timeoutMs, Function<ExecutionResult, T> onError, BiFunction<T, Long, T> withQueueNanos) {
+        CompletableFuture<T> result = new CompletableFuture<>();
+        // кто первым "начал" задачу: она сама или таймер очереди, который её отклоняет
+        AtomicBoolean started = new AtomicBoolean();
+        // таймер очереди, после начала задачи — таймер выполнения
+        AtomicReference<ScheduledFuture<?>> timer = new AtomicReference<>();
+        AtomicReference<FutureTask<T>> self = new AtomicReference<>();
+        long enqueuedAt = System.nanoTime();
+
+        FutureTask<T> work = new FutureTask<>(() -> {
+            if (callPermits != null) {
+                // виртуальный поток дёшево ждёт разрешения; это тоже ожидание в очереди
+                callPermits.acquire();
+            }
+            try {
+                if (!started.compareAndSet(false, true)) {
+                    return null; // уже отклонена по таймауту очереди — future завершён
+                }
+                long queueNanos = System.nanoTime() - enqueuedAt;
+                timer.getAndSet(timeoutTimer.schedule(() -> {
+                    if (result.complete(onError.apply(ExecutionResult.timeout(
+                            String.format(Locale.ROOT, "%s timeout > %d ms", lang, timeoutMs))))) {
+                        abort(self.get(), onAbort);
+                    }
+                }, timeoutMs, TimeUnit.MILLISECONDS)).cancel(false);
+                return withQueueNanos.apply(task.call(), queueNanos);
+            } finally {
+                if (callPermits != null) {
+                    callPermits.release();
+                }
+            }
+        }) {
+            @Override
+            protected void done() {
+                if (isCancelled()) {
+                    return;
+                }
+                try {
+                    result.complete(get());
+                } catch (ExecutionException ee) {
+                    result.complete(onError.apply(ExecutionResult.error(lang + " execution failed: " + ee.getCause())));
+                } catch (InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                    result.complete(onError.apply(ExecutionResult.error(lang + " interrupted")));
+                }
+            }
+        };
+        self.set(work);
+
         try {
-            Instant start = Instant.now();
+            timer.set(timeoutTimer.schedule(() -> {
+                if (started.compareAndSet(false, true) && result.complete(onError.apply(ExecutionResult.rejected(
+                        String.format(Locale.ROOT, "%s rejected: queued > %d ms in bulkhead %s",
+                                lang, queueTimeoutMs, bulkhead.name()))))) {
+                    work.cancel(false);
+                }
+            }, queueTimeoutMs, TimeUnit.MILLISECONDS));
+            bulkhead.execute(work);
+        } catch (RejectedExecutionException ree) {
+            if (timer.get() != null) {
+                timer.get().cancel(false);
+            }
+            if (closed.get()) {
+                return CompletableFuture.completedFuture(onError.apply(ExecutionResult.error(lang + " executor is shut down")));
+            }
+            if (bulkhead.isShutdown()) {
+                // bulkhead функции закрыт для другой функции между выбором и постановкой задачи
+                return CompletableFuture.completedFuture(onError.apply(ExecutionResult.rejected(String.format(Locale.ROOT,
+                        "%s rejected: bulkhead %s was evicted", lang, bulkhead.name()))));
+            }
+            return CompletableFuture.completedFuture(onError.apply(ExecutionResult.rejected(String.format(Locale.ROOT,
+                    "%s rejected: bulkhead %s is full (%d running, %d queued)",
+                    lang, bulkhead.name(), bulkhead.threads(), bulkhead.queueCapacity()))));
+        }
 
-            // Формируем скрипт, который печатает результат функции в stdout
-            StringBuilder script = new StringBuilder();
-            if (funcText.trim().startsWith("def ")) {
-                script.append(funcText).append("\n");
-                script.append("print(f(").append(x).append("))\n");
-            } else {
-                // предполагаем lambda или выражение
-                script.append("f = ").append(funcText).append("\n");
-                script.append("print(f(").append(x).append("))\n");
+        result.whenComplete((r, e) -> {
+            timer.get().cancel(false);
+            if (result.isCancelled()) {
+                abort(work, onAbort);
             }
+        });
+        return result;
+    }
 
-            // сначала пробуем python3, затем python
-            Process process;
-            try {
-                process = new ProcessBuilder("python3", "-u", "-c", script.toString()).start();
-            } catch (IOException ex) {
-                process = new ProcessBuilder("python", "-u", "-c", script.toString()).start();
+    /** Прервать задачу и выполнить onAbort (если задан). */
+    private static void abort(FutureTask<?> work, Runnable onAbort) {
+        work.cancel(true);
+        if (onAbort != null) {
+            onAbort.run();
+        }
+    }
+
+    /**
+     * Bulkhead, в котором выполняется функция: общий для языка или собственный для функции.
+     * Собственных не больше maxFunctionBulkheads: для новой функции сверх лимита закрывается
+     * (shutdown — принятые задачи доработают) один из простаивающих, а если простаивающих нет,
+     * функция выполняется в общем bulkhead'е языка.
+     */
+    private Bulkhead bulkhead(String lang, String funcText) {
+        Bulkhead shared = "JS".equals(lang) ? jsBulkhead : pythonBulkhead;
+        if (!perFunctionBulkheads) {
+            return shared;
+        }
+        String key = lang + '\0' + funcText;
+        Bulkhead own = functionBulkheads.get(key);
+        if (own != null) {
+            return own;
+        }
+        synchronized (functionBulkheads) {
+            own = functionBulkheads.get(key);
+            if (own != null) {
+                return own;
+            }
+            if (functionBulkheads.size() >= maxFunctionBulkheads && !evictIdleBulkhead()) {
+                return shared;
             }
+            own = newBulkhead(lang.toLowerCase(Locale.ROOT) + "-fn-" + functionBulkheadSeq++, functionThreads);
+            functionBulkheads.put(key, own);
+            return own;
+        }
+    }
 
-            // читаем stdout и stderr асинхронно
-            ByteArrayOutputStream baosOut = new ByteArrayOutputStream();
-            ByteArrayOutputStream baosErr = new ByteArrayOutputStream();
+    /**
+     * Сколько вызовов одной функции языка выполняется одновременно, не дожидаясь очереди:
+     * число потоков её bulkhead'а (языка или функции).
+     */
+    public int bulkheadThreads(boolean js) {
+        return perFunctionBulkheads ? functionThreads : (js ? jsBulkhead : pythonBulkhead).threads();
+    }
 
-            Thread outThread = streamTo(process.getInputStream(), baosOut);
-            Thread errThread = streamTo(process.getErrorStream(), baosErr);
+    /** Закрыть и убрать один простаивающий bulkhead функции (под монитором functionBulkheads). */
+    private boolean evictIdleBulkhead() {
+        for (Map.Entry<String, Bulkhead> e : functionBulkheads.entrySet()) {
+            if (e.getValue().isIdle() && functionBulkheads.remove(e.getKey(), e.getValue())) {
+                e.getValue().shutdown();
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private Bulkhead newBulkhead(String name, int threads) {
+        return virtualExecutor != null
+                ? Bulkhead.virtual(name, virtualExecutor, threads, bulkheadQueue)
+                : Bulkhead.platform(name, threads, bulkheadQueue);
+    }
+
+    /** Bulkhead'ы языков и функций (для метрик загрузки). */
+    public List<Bulkhead> bulkheads() {
+        List<Bulkhead> all = new ArrayList<>();
+        all.add(jsBulkhead);
+        all.add(pythonBulkhead);
+        all.addAll(functionBulkheads.values());
+        return all;
+    }
+
+    /**
+     * Выполнить функцию, скомпилированную {@link ExpressionCompiler}, прямо в вызывающем потоке —
+     * без пула, таймаута и движка: такие функции заведомо завершаются мгновенно.
+     *
+     * @return результат или null, если функцию нужно выполнить интерпретатором
+     */
+    private ExecutionResult executeNative(String funcText, ExpressionCompiler.Dialect dialect, int x) {
+        if (!nativeExpressions || funcText == null) {
+            return null;
+        }
+        ConcurrentMap<String, Optional<DoubleUnaryOperator>> cache =
+                dialect == ExpressionCompiler.Dialect.JS ? nativeJs : nativePython;
+        DoubleUnaryOperator fn = cache
+                .computeIfAbsent(funcText, text -> Optional.ofNullable(ExpressionCompiler.compile(text, dialect)))
+                .orElse(null);
+        if (fn == null) {
+            return null;
+        }
 
-            int exitCode = process.waitFor();
-            outThread.join();
-            errThread.join();
+        long start = System.nanoTime();
+        double val;
+        try {
+            val = fn.applyAsDouble(x);
+        } catch (ArithmeticException e) {
+            return null; // Python бросил бы исключение — пусть интерпретатор вернёт его текст
+        }
+        if (dialect == ExpressionCompiler.Dialect.PYTHON && !Double.isFinite(val)) {
+            return null; // Python-арифметика расходится с double на бесконечностях и NaN
+        }
+        return ExecutionResult.ok(val, 0, System.nanoTime() - start);
+    }
 
-            String stdout = baosOut.toString(StandardCharsets.UTF_8).trim();
-            String stderr = baosErr.toString(StandardCharsets.UTF_8).trim();
+    /**
+     * Возвращает скомпилированную JS-функцию из кэша, компилируя её при первом обращении.
+     * Скрипт имеет вид "(funcText\n)(__x)": тело разбирается и линкуется один раз,
+     * а на каждом вызове только исполняется с новым значением __x. Перевод строки перед ')'
+     * нужен, чтобы строчный комментарий в конце funcText не закомментировал обёртку.
+     * Ошибка компиляции тоже кэшируется, чтобы не разбирать невалидный текст повторно
+     * (кроме {@link #prepareAsync}: там в кэш попадает только удачная компиляция).
+     */
+    private CompiledJs compileJs(String funcText) {
+        return jsScripts.computeIfAbsent(funcText, this::compileJsScript);
+    }
 
-            if (exitCode != 0 || !stderr.isEmpty()) {
-                String errMsg = stderr.isEmpty() ? ("Python exited with code " + exitCode) : stderr;
-                return ExecutionResult.error("Python error: " + errMsg);
+    /** Скомпилировать "(funcText\n)(__x)" без кэша. */
+    private CompiledJs compileJsScript(String funcText) {
+        String body = stripSemicolons(funcText);
+        try {
+            return new CompiledJs(((Compilable) jsEngine).compile("(" + body + "\n)(" + JS_ARG + ")"), null);
+        } catch (ScriptException se) {
+            return new CompiledJs(null, "JS error: " + se.getMessage());
+        }
+    }
+
+    /**
+     * Слитный скрипт для нескольких JS-функций: вызывает каждую с __x, результат i-й функции
+     * пишет в __out[2i], её время в наносекундах (System.nanoTime) — в __out[2i+1] (-1, если функция бросила исключение).
+     * Если хотя бы одна функция не компилируется сама по себе, возвращается CompiledJs без скрипта.
+     */
+    private CompiledJs compileJsFused(List<String> funcTexts) {
+        return jsFusedScripts.computeIfAbsent(String.join("\0", funcTexts), key -> {
+            StringBuilder js = new StringBuilder("(function(__x, __out) {\nvar __clock = Java.type('java.lang.System'), __t;\n");
+            for (int i = 0; i < funcTexts.size(); i++) {
+                CompiledJs single = compileJs(funcTexts.get(i));
+                if (single.error != null) {
+                    return new CompiledJs(null, single.error);
+                }
+                js.append("__t = __clock.nanoTime(); try { __out[").append(2 * i).append("] = (")
+                        .append(stripSemicolons(funcTexts.get(i))).append("\n)(__x); __out[").append(2 * i + 1)
+                        .append("] = __clock.nanoTime() - __t; } catch (__e) { __out[").append(2 * i + 1).append("] = -1; }\n");
             }
+            js.append("})(").append(JS_ARG).append(", ").append(JS_OUT).append(")");
+            try {
+                return new CompiledJs(((Compilable) jsEngine).compile(js.toString()), null);
+            } catch (ScriptException se) {
+                return new CompiledJs(null, "JS error: " + se.getMessage());
+            }
+        });
+    }
 
-            double val = Double.parseDouble(stdout);
-            Instant end = Instant.now();
-            return ExecutionResult.ok(val, Duration.between(start, end).toMillis());
-        } catch (Exception e) {
-            return ExecutionResult.error("Python run failed: " + e.toString());
+    /**
+     * Батч-скрипт: вызывает функцию для каждого элемента Java-массива __xs и пишет результат
+     * в __out[i]; при исключении __out[i] остаётся null. Функция компилируется как обычно
+     * (см. {@link #compileJs(String)}), ошибка компиляции возвращается как есть.
+     */
+    private CompiledJs compileJsBatch(String funcText) {
+        return jsBatchScripts.computeIfAbsent(funcText, text -> {
+            CompiledJs single = compileJs(text);
+            if (single.error != null) {
+                return single;
+            }
+            String js = "(function(__f) {\n"
+                    + "for (var __i = 0; __i < " + JS_XS + ".length; __i++) {\n"
+                    + "  try { " + JS_OUT + "[__i] = __f(" + JS_XS + "[__i]); } catch (__e) { " + JS_OUT + "[__i] = null; }\n"
+                    + "}\n"
+                    + "})(" + stripSemicolons(text) + "\n)";
+            try {
+                return new CompiledJs(((Compilable) jsEngine).compile(js), null);
+            } catch (ScriptException se) {
+                return new CompiledJs(null, "JS error: " + se.getMessage());
+            }
+        });
+    }
+
+    /** Текст функции без завершающих ';' — чтобы его можно было обернуть в скобки. */
+    private static String stripSemicolons(String text) {
+        String body = text.trim();
+        while (body.endsWith(";")) {
+            body = body.substring(0, body.length() - 1).trim();
         }
+        return body;
+    }
+
+    /**
+     * Выполнить Python-функцию. Простая арифметика выполняется нативно
+     * (см. {@link ExpressionCompiler}), остальное — в резидентном процессе из {@link PythonWorkerPool}.
+     * Функция загружается в процесс один раз, дальше передаётся только x.
+     *
+     * Поддерживаем два формата функции:
+     *  - "def f(x): ..." — воркер вызывает f(x)
+     *  - "lambda x: ..." — воркер создаёт f = <lambda> и вызывает f(x)
+     *
+     * При таймауте процесс, выполняющий вызов, убивается (иначе он продолжил бы
+     * считать и рассинхронизировал протокол), пул запустит новый при следующем запросе.
+     *
+     * @param funcText текст Python-функции
+     * @param x входной int-аргумент
+     * @return ExecutionResult
+     */
+    public ExecutionResult executePython(String funcText, int x) {
+        return executePythonAsync(funcText, x).join();
+    }
+
+    /**
+     * Асинхронный вариант {@link #executePython(String, int)}, см. {@link #executeJsAsync(String, int)}.
+     */
+    public CompletableFuture<ExecutionResult> executePythonAsync(String funcText, int x) {
+        return executePythonAsync(funcText, x, false);
     }
 
     /**
-     * Копирует InputStream в ByteArrayOutputStream в отдельном потоке.
-     * Возвращает поток, который запущен и читает данные.
+     * Асинхронный вызов Python-функции с кэшем для чистых функций, см. {@link #executeJsAsync(String, int, boolean)}.
      */
-    private Thread streamTo(InputStream in, ByteArrayOutputStream baos) {
-        Thread t = new Thread(() -> {
-            try (InputStream is = in; ByteArrayOutputStream os = baos) {
-                byte[] buf = new byte[1024];
-                int r;
-                while ((r = is.read(buf)) != -1) {
-                    os.write(buf, 0, r);
+    public CompletableFuture<ExecutionResult> executePythonAsync(String funcText, int x, boolean pure) {
+        ExecutionResult fast = executeNative(funcText, ExpressionCompiler.Dialect.PYTHON, x);
+        if (fast != null) {
+            return CompletableFuture.completedFuture(fast);
+        }
+        return cached("Python", funcText, x, pure, () -> {
+            PythonCall<ExecutionResult> call = new PythonCall<>((w, startupNanos) -> {
+                long start = System.nanoTime();
+                PythonWorker.Reply reply = w.call(pythonWorkers.functionId(funcText), funcText, x);
+                if (!reply.ok) {
+                    return ExecutionResult.error("Python error: " + reply.text);
                 }
-            } catch (IOException ignored) {
+                double val = Double.parseDouble(reply.text.trim());
+                return ExecutionResult.ok(val, startupNanos, System.nanoTime() - start);
+            }, Function.identity());
+            return submit(bulkhead("Python", funcText), call, "Python", call::abort);
+        });
+    }
+
+    /**
+     * Кэш результатов чистых функций. Попадание возвращается сразу (timeMs = 0 — функция
+     * не вычислялась); промах вычисляется как обычно, успешный результат запоминается.
+     */
+    private CompletableFuture<ExecutionResult> cached(String lang, String funcText, int x, boolean pure,
+                                                      Supplier<CompletableFuture<ExecutionResult>> compute) {
+        if (!pure || resultCache == null || funcText == null) {
+            return compute.get();
+        }
+        Double hit = resultCache.get(lang, funcText, x);
+        if (hit != null) {
+            return CompletableFuture.completedFuture(ExecutionResult.ok(hit, 0, 0));
+        }
+        CompletableFuture<ExecutionResult> result = compute.get();
+        result.thenAccept(r -> {
+            if (r.ok) {
+                resultCache.put(lang, funcText, x, r.value);
             }
-        }, "proc-stream-reader");
-        t.setDaemon(true);
-        t.start();
-        return t;
+        });
+        return result;
+    }
+
+    /** Число запущенных и ещё не завершившихся python-процессов. */
+    public int livePythonProcesses() {
+        return pythonWorkers.liveProcesses();
+    }
+
+    /** Сколько python-процессов завершилось (включая убитые по таймауту). */
+    public long reapedPythonProcesses() {
+        return pythonWorkers.reapedProcesses();
+    }
+
+    /** Кэш результатов чистых функций (для метрик попаданий и промахов); null, если выключен. */
+    public ResultCache resultCache() {
+        return resultCache;
+    }
+
+    /**
+     * Executors.newVirtualThreadPerTaskExecutor() через reflection (метод есть только в JDK 21+).
+     *
+     * На старом JDK настройка не действует — об этом пишется предупреждение в лог.
+     *
+     * @return executor или null, если JDK не поддерживает виртуальные потоки
+     */
+    private static ExecutorService newVirtualThreadExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            log.warn("executor.virtualThreads is set, but Java {} has no virtual threads (JDK 21+ required); "
+                    + "falling back to platform thread bulkheads", Runtime.version().feature());
+            return null;
+        }
     }
 
     /** Преобразует объект (Number или String) в double */
@@ -233,33 +1080,199 @@ public class FunctionExecutor {
     @PreDestroy
     public void destroy() {
         if (closed.compareAndSet(false, true)) {
-            jsExecutor.shutdownNow();
-            pythonPool.shutdownNow();
+            timeoutTimer.shutdownNow();
+            bulkheads().forEach(Bulkhead::shutdownNow);
+            if (virtualExecutor != null) {
+                virtualExecutor.shutdownNow();
+            }
+            pythonWorkers.close();
+            if (jsPool != null) {
+                jsPool.close();
+            }
+        }
+    }
+
+    /**
+     * Один запрос к воркеру из пула (вызов функции или батч). abort() можно вызвать из другого
+     * потока: он убивает процесс, на котором сейчас выполняется запрос.
+     *
+     * @param <T> результат запроса; ошибки пула и процесса превращаются в него через onError
+     */
+    private class PythonCall<T> implements Callable<T> {
+        private final WorkerAction<T> action;
+        private final Function<ExecutionResult, T> onError;
+        private volatile PythonWorker worker;
+        private volatile boolean aborted;
+
+        PythonCall(WorkerAction<T> action, Function<ExecutionResult, T> onError) {
+            this.action = action;
+            this.onError = onError;
+        }
+
+        @Override
+        public T call() {
+            PythonWorker w;
+            long acquireStart = System.nanoTime();
+            try {
+                w = pythonWorkers.acquire();
+            } catch (InterruptedException ie) {
+                Thread.currentThread().interrupt();
+                return onError.apply(ExecutionResult.error("Python interrupted"));
+            } catch (IOException e) {
+                return onError.apply(ExecutionResult.error("Python run failed: " + e));
+            }
+
+            worker = w;
+            if (aborted) {
+                w.destroy();
+            }
+            boolean healthy = false;
+            try {
+                T result = action.run(w, System.nanoTime() - acquireStart);
+                healthy = true;
+                return result;
+            } catch (IOException e) {
+                return onError.apply(ExecutionResult.error("Python worker failed: " + w.describeFailure(e)));
+            } catch (Exception e) {
+                // ответ получен, но не разобран — процесс в порядке
+                healthy = true;
+                return onError.apply(ExecutionResult.error("Python run failed: " + e));
+            } finally {
+                worker = null;
+                pythonWorkers.release(w, healthy && !aborted);
+            }
+        }
+
+        void abort() {
+            aborted = true;
+            PythonWorker w = worker;
+            if (w != null) {
+                w.destroy();
+            }
+        }
+    }
+
+    /**
+     * Действие над воркером; IOException означает, что процесс непригоден.
+     * startupNanos — сколько заняло получение воркера (включая запуск нового процесса).
+     */
+    @FunctionalInterface
+    private interface WorkerAction<T> {
+        T run(PythonWorker w, long startupNanos) throws Exception;
+    }
+
+    /** Элемент кэша JS-функций: либо скомпилированный скрипт, либо текст ошибки компиляции. */
+    private static class CompiledJs {
+        final CompiledScript script;
+        final String error;
+
+        CompiledJs(CompiledScript script, String error) {
+            this.script = script;
+            this.error = error;
+        }
+    }
+
+    /**
+     * Результат батча: для каждого xs[i] — значение values[i] или ошибка errors[i] (null при успехе).
+     * timeMs и фазы (наносекунды) — время всего батча.
+     */
+    public static class BatchResult {
+        public final int[] xs;
+        public final double[] values;   // NaN там, где ошибка
+        public final String[] errors;   // null там, где успех
+        public final long timeMs;
+        public final long queueNanos;   // ожидание батча в очереди bulkhead'а
+        public final long compileNanos; // компиляция батч-скрипта / получение python-процесса
+        public final long execNanos;    // выполнение батча
+
+        BatchResult(int[] xs, double[] values, String[] errors, long compileNanos, long execNanos) {
+            this(xs, values, errors, TimeUnit.NANOSECONDS.toMillis(compileNanos + execNanos), 0, compileNanos, execNanos);
+        }
+
+        private BatchResult(int[] xs, double[] values, String[] errors, long timeMs,
+                            long queueNanos, long compileNanos, long execNanos) {
+            this.xs = xs;
+            this.values = values;
+            this.errors = errors;
+            this.timeMs = timeMs;
+            this.queueNanos = queueNanos;
+            this.compileNanos = compileNanos;
+            this.execNanos = execNanos;
+        }
+
+        /**
+         * Результат i-го элемента: компиляция и выполнение — доля батча, приходящаяся на один элемент;
+         * ожидание в очереди — всего батча (элемент ждал вместе с ним).
+         */
+        public ExecutionResult get(int i) {
+            int n = Math.max(1, xs.length);
+            return errors[i] == null
+                    ? ExecutionResult.ok(values[i], compileNanos / n, execNanos / n).withQueueNanos(queueNanos)
+                    : ExecutionResult.error(errors[i]);
+        }
+
+        BatchResult withQueueNanos(long queueNanos) {
+            return new BatchResult(xs, values, errors, timeMs, queueNanos, compileNanos, execNanos);
+        }
+
+        static BatchResult failed(int[] xs, ExecutionResult error) {
+            double[] values = new double[xs.length];
+            String[] errors = new String[xs.length];
+            Arrays.fill(values, Double.NaN);
+            Arrays.fill(errors, error.error);
+            return new BatchResult(xs, values, errors, -1, 0, 0, 0);
         }
     }
 
     /**
      * Результат выполнения функции: либо ok + value + timeMs, либо error.
+     * timeMs — компиляция и выполнение, в миллисекундах (как раньше); те же фазы с наносекундной
+     * точностью — compileNanos и execNanos. Ожидание в очереди bulkhead'а — отдельно, в queueNanos.
      */
     public static class ExecutionResult {
         public final boolean ok;
         public final double value;    // meaningful only if ok==true
         public final long timeMs;     // измеренное время выполнения
+        public final long queueNanos;   // ожидание в очереди bulkhead'а
+        public final long compileNanos; // компиляция функции / получение (запуск) python-процесса
+        public final long execNanos;    // выполнение
         public final String error;    // non-null only if ok==false
+        public final boolean rejected; // вызов не выполнялся: bulkhead заполнен или истекло ожидание в очереди
+        public final boolean timedOut; // вызов прерван по TIMEOUT_MS
 
-        private ExecutionResult(boolean ok, double value, long timeMs, String error) {
+        private ExecutionResult(boolean ok, double value, long timeMs, long queueNanos, long compileNanos,
+                                long execNanos, String error, boolean rejected, boolean timedOut) {
             this.ok = ok;
             this.value = value;
             this.timeMs = timeMs;
+            this.queueNanos = queueNanos;
+            this.compileNanos = compileNanos;
+            this.execNanos = execNanos;
             this.error = error;
+            this.rejected = rejected;
+            this.timedOut = timedOut;
         }
 
-        public static ExecutionResult ok(double value, long timeMs) {
-            return new ExecutionResult(true, value, timeMs, null);
+        public static ExecutionResult ok(double value, long compileNanos, long execNanos) {
+            return new ExecutionResult(true, value, TimeUnit.NANOSECONDS.toMillis(compileNanos + execNanos),
+                    0, compileNanos, execNanos, null, false, false);
         }
 
         public static ExecutionResult error(String error) {
-            return new ExecutionResult(false, Double.NaN, -1, error);
+            return new ExecutionResult(false, Double.NaN, -1, 0, 0, 0, error, false, false);
+        }
+
+        public static ExecutionResult rejected(String error) {
+            return new ExecutionResult(false, Double.NaN, -1, 0, 0, 0, error, true, false);
+        }
+
+        public static ExecutionResult timeout(String error) {
+            return new ExecutionResult(false, Double.NaN, -1, 0, 0, 0, error, false, true);
+        }
+
+        /** Тот же результат с временем ожидания в очереди. */
+        public ExecutionResult withQueueNanos(long queueNanos) {
+            return new ExecutionResult(ok, value, timeMs, queueNanos, compileNanos, execNanos, error, rejected, timedOut);
         }
     }
 }
@@ -0,0 +1,264 @@
+package com.example.webflaxcalc.executions;
+
+import javax.script.Bindings;
+import javax.script.Compilable;
+import javax.script.CompiledScript;
+import javax.script.ScriptContext;
+import javax.script.ScriptEngine;
+import javax.script.ScriptException;
+import javax.script.SimpleScriptContext;
+import java.util.concurrent.BlockingDeque;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * JsEnginePool — ограниченный пул прогретых JS-движков.
+ *
+ * Каждый элемент пула ({@link PooledEngine}) — изолированный ScriptContext со своими
+ * Bindings (в Nashorn это отдельный Global). Все элементы созданы одним общим
+ * ScriptEngine, поэтому скомпилированные им CompiledScript исполняются в любом из них
+ * без повторного разбора. Поток берёт движок через {@link #acquire()}, исполняет
+ * функцию и возвращает его через {@link #release(PooledEngine)}: одновременно
+ * один движок использует только один поток.
+ *
+ * Политика:
+ *  - minIdle движков создаются сразу (прогрев) и никогда не вытесняются;
+ *  - всего движков не больше maxSize — лишние вызовы ждут освобождения;
+ *  - движки сверх minIdle, простаивающие дольше idleTimeoutMs, удаляются фоновой задачей;
+ *  - поток в первую очередь получает тот движок, которым пользовался последним (affinity),
+ *    иначе — последний возвращённый (LIFO), т.е. самый "горячий".
+ *
+ * Состояние не переходит от вызова к вызову: встроенные объекты (Math, Object, Array, ...) и
+ * глобальные имена (parseInt, ...) каждого контекста при создании делаются неизменяемыми,
+ * переменные вызова удаляются после него, а контекст, в котором функция создала глобальную
+ * переменную, при возврате в пул заменяется новым. Новый контекст стоит миллисекунды,
+ * поэтому сбрасывается только "грязный"; функции, которые не трогают глобальное состояние,
+ * работают в прогретом.
+ */
+public class JsEnginePool {
+
+    /**
+     * Выполняется в каждом новом контексте: глобальные имена — только для чтения,
+     * встроенные объекты ECMAScript и их прототипы заморожены.
+     */
+    private static final String LOCK_BUILTINS = "(function(g) {\n"
+            + "  Object.getOwnPropertyNames(g).forEach(function(k) {\n"
+            + "    try { Object.defineProperty(g, k, {writable: false, configurable: false}); } catch (e) {}\n"
+            + "  });\n"
+            + "  ['Object', 'Function', 'Array', 'String', 'Boolean', 'Number', 'Math', 'JSON', 'Date', 'RegExp',\n"
+            + "   'Error', 'EvalError', 'RangeError', 'ReferenceError', 'SyntaxError', 'TypeError', 'URIError']\n"
+            + "      .forEach(function(k) {\n"
+            + "    var v = g[k];\n"
+            + "    Object.freeze(v);\n"
+            + "    if (typeof v === 'function') Object.freeze(v.prototype);\n"
+            + "  });\n"
+            + "})(this)";
+
+    /** Число собственных свойств глобального объекта: больше, чем после создания, — функция оставила глобальную переменную. */
+    private static final String GLOBAL_COUNT = "Object.getOwnPropertyNames(this).length";
+
+    /** Общий движок, от которого создаются Bindings всех элементов пула. */
+    private final ScriptEngine engine;
+
+    private final int minIdle;
+    private final int maxSize;
+    private final long idleTimeoutMs;
+
+    /** Свободные движки; голова — последний возвращённый. */
+    private final BlockingDeque<PooledEngine> idle = new LinkedBlockingDeque<>();
+
+    /** Разрешения на выдачу движков: ограничивает число одновременно занятых движков. */
+    private final Semaphore permits;
+
+    /** Сколько движков создано (занятые + свободные). */
+    private final AtomicInteger size = new AtomicInteger(0);
+
+    /** Последний движок, выданный текущему потоку. */
+    private final ThreadLocal<PooledEngine> lastUsed = new ThreadLocal<>();
+
+    /** Фоновая задача вытеснения простаивающих движков. */
+    private final ScheduledExecutorService evictor;
+
+    private final CompiledScript lockBuiltins;
+    private final CompiledScript globalCount;
+
+    /** Сколько контекстов заменено из-за оставленного функцией глобального состояния. */
+    private final AtomicInteger resets = new AtomicInteger(0);
+
+    public JsEnginePool(ScriptEngine engine, int minIdle, int maxSize, long idleTimeoutMs) {
+        this.engine = engine;
+        try {
+            this.lockBuiltins = ((Compilable) engine).compile(LOCK_BUILTINS);
+            this.globalCount = ((Compilable) engine).compile(GLOBAL_COUNT);
+        } catch (ScriptException e) {
+            throw new IllegalStateException("JS pool scripts do not compile", e);
+        }
+        this.maxSize = Math.max(1, maxSize);
+        this.minIdle = Math.max(0, Math.min(minIdle, this.maxSize));
+        this.idleTimeoutMs = Math.max(1, idleTimeoutMs);
+        this.permits = new Semaphore(this.maxSize);
+
+        for (int i = 0; i < this.minIdle; i++) {
+            size.incrementAndGet();
+            idle.offerLast(create());
+        }
+
+        this.evictor = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "js-pool-evictor");
+            t.setDaemon(true);
+            return t;
+        });
+        long period = Math.max(1, this.idleTimeoutMs / 2);
+        evictor.scheduleWithFixedDelay(this::evictIdle, period, period, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Взять движок из пула. Если все maxSize движков заняты — ждёт освобождения.
+     *
+     * @throws InterruptedException если поток прерван во время ожидания (например, по таймауту вызова)
+     */
+    public PooledEngine acquire() throws InterruptedException {
+        permits.acquire();
+        try {
+            PooledEngine preferred = lastUsed.get();
+            PooledEngine pe = (preferred != null && idle.remove(preferred)) ? preferred : idle.pollFirst();
+            if (pe == null) {
+                // разрешение получено, значит size < maxSize — можно создать новый движок
+                size.incrementAndGet();
+                pe = create();
+            }
+            lastUsed.set(pe);
+            return pe;
+        } catch (RuntimeException e) {
+            permits.release();
+            throw e;
+        }
+    }
+
+    /** Вернуть движок в пул; контекст, в котором осталось глобальное состояние вызова, заменяется новым. */
+    public void release(PooledEngine pe) {
+        if (globalProperties(pe.context) != pe.cleanGlobals) {
+            resets.incrementAndGet();
+            pe.reset(newContext());
+        }
+        pe.lastUsedNanos = System.nanoTime();
+        idle.offerFirst(pe);
+        permits.release();
+    }
+
+    /** Текущее число созданных движков (занятые + свободные). */
+    public int size() {
+        return size.get();
+    }
+
+    /** Число свободных движков. */
+    public int idleCount() {
+        return idle.size();
+    }
+
+    /** Сколько раз контекст был заменён новым из-за глобального состояния, оставленного функцией. */
+    public int resetCount() {
+        return resets.get();
+    }
+
+    /** Остановить фоновое вытеснение и отпустить свободные движки. */
+    public void close() {
+        evictor.shutdownNow();
+        idle.clear();
+    }
+
+    /**
+     * Удаляет свободные движки, простаивающие дольше idleTimeoutMs, пока их больше minIdle.
+     * remove() из очереди атомарен, поэтому движок, который в этот момент забрал поток, не пострадает.
+     */
+    private void evictIdle() {
+        long deadline = System.nanoTime() - TimeUnit.MILLISECONDS.toNanos(idleTimeoutMs);
+        for (PooledEngine pe : idle) {
+            if (size.get() <= minIdle) {
+                return;
+            }
+            if (pe.lastUsedNanos - deadline < 0 && idle.remove(pe)) {
+                size.decrementAndGet();
+            }
+        }
+    }
+
+    private PooledEngine create() {
+        PooledEngine pe = new PooledEngine();
+        pe.reset(newContext());
+        return pe;
+    }
+
+    /** Новый контекст со своим Global и заблокированными встроенными объектами. */
+    private ScriptContext newContext() {
+        ScriptContext ctx = new SimpleScriptContext();
+        ctx.setBindings(engine.createBindings(), ScriptContext.ENGINE_SCOPE);
+        try {
+            lockBuiltins.eval(ctx);
+        } catch (ScriptException e) {
+            throw new IllegalStateException("JS context setup failed", e);
+        }
+        return ctx;
+    }
+
+    private int globalProperties(ScriptContext ctx) {
+        try {
+            return ((Number) globalCount.eval(ctx)).intValue();
+        } catch (ScriptException e) {
+            return -1; // не удалось проверить — считаем контекст грязным
+        }
+    }
+
+    /**
+     * Элемент пула: изолированный контекст исполнения. Не потокобезопасен —
+     * используется только потоком, получившим его через acquire().
+     */
+    public class PooledEngine {
+        private ScriptContext context;
+        private Bindings bindings;
+        /** Число глобальных свойств чистого контекста. */
+        private int cleanGlobals;
+        private volatile long lastUsedNanos = System.nanoTime();
+
+        private PooledEngine() {
+        }
+
+        private void reset(ScriptContext ctx) {
+            this.context = ctx;
+            this.bindings = ctx.getBindings(ScriptContext.ENGINE_SCOPE);
+            this.cleanGlobals = globalProperties(ctx);
+        }
+
+        /**
+         * Исполнить скомпилированный скрипт в этом контексте, предварительно
+         * положив значения в его Bindings.
+         *
+         * @param script скрипт, скомпилированный общим движком пула
+         * @param name имя переменной
+         * @param value значение переменной
+         */
+        public Object eval(CompiledScript script, String name, Object value) throws ScriptException {
+            bindings.put(name, value);
+            try {
+                return script.eval(context);
+            } finally {
+                bindings.remove(name);
+            }
+        }
+
+        /** То же с двумя переменными. */
+        public Object eval(CompiledScript script, String name, Object value, String name2, Object value2)
+                throws ScriptException {
+            bindings.put(name2, value2);
+            try {
+                return eval(script, name, value);
+            } finally {
+                bindings.remove(name2);
+            }
+        }
+    }
+}
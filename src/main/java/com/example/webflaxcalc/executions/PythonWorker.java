@@ -0,0 +1,214 @@
+package com.example.webflaxcalc.executions;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * PythonWorker — один резидентный процесс python (скрипт python/worker.py).
+ *
+ * Функции загружаются в процесс один раз (операция D), дальше каждый вызов —
+ * это один кадр запроса и один кадр ответа по stdin/stdout. Формат кадра:
+ * 4 байта длины (big-endian) + UTF-8 payload, см. комментарий в worker.py.
+ *
+ * Экземпляр не потокобезопасен: им пользуется только поток, взявший его из
+ * {@link PythonWorkerPool}. Исключение — {@link #destroy()}, который можно вызвать
+ * из любого потока (например, по таймауту), чтобы прервать зависший вызов.
+ */
+public class PythonWorker {
+
+    private final Process process;
+    private final DataOutputStream out;
+    private final DataInputStream in;
+
+    /** Номера функций, уже загруженных в этот процесс. */
+    private final Set<Integer> defined = new HashSet<>();
+
+    /** Последняя строка stderr процесса — для диагностики, если он упал. */
+    private volatile String lastStderrLine = "";
+
+    PythonWorker(Process process) {
+        this.process = process;
+        this.out = new DataOutputStream(new BufferedOutputStream(process.getOutputStream()));
+        this.in = new DataInputStream(new BufferedInputStream(process.getInputStream()));
+        drainStderr();
+    }
+
+    /**
+     * Вызвать функцию в процессе, при необходимости предварительно загрузив её.
+     *
+     * @param fnId номер функции (выдаётся пулом, один и тот же для одинакового текста)
+     * @param source текст функции
+     * @param x аргумент
+     * @return ответ воркера (ok + текст результата или ошибка пользовательского кода)
+     * @throws IOException если процесс упал или был уничтожен — воркер больше непригоден
+     */
+    public Reply call(int fnId, String source, int x) throws IOException {
+        Reply def = define(fnId, source);
+        if (def != null) {
+            return def;
+        }
+        return request("C" + fnId + "\n" + x);
+    }
+
+    /**
+     * Вызвать функцию для каждого x одним запросом (операция B).
+     *
+     * @return ответы в порядке xs; если функцию не удалось загрузить — её ошибка для каждого x
+     * @throws IOException если процесс упал или был уничтожен — воркер больше непригоден
+     */
+    public List<Reply> callBatch(int fnId, String source, int[] xs) throws IOException {
+        if (xs.length == 0) {
+            return List.of();
+        }
+        Reply def = define(fnId, source);
+        if (def != null) {
+            return Collections.nCopies(xs.length, def);
+        }
+        StringBuilder payload = new StringBuilder(8 + xs.length * 4).append('B').append(fnId).append('\n');
+        for (int i = 0; i < xs.length; i++) {
+            if (i > 0) {
+                payload.append(' ');
+            }
+            payload.append(xs[i]);
+        }
+        Reply reply = request(payload.toString());
+        if (!reply.ok) {
+            return Collections.nCopies(xs.length, reply);
+        }
+        String[] parts = reply.text.split("\0", -1);
+        if (parts.length != xs.length) {
+            throw new IOException("Python worker sent " + parts.length + " results for " + xs.length + " values");
+        }
+        List<Reply> replies = new ArrayList<>(xs.length);
+        for (String part : parts) {
+            replies.add(new Reply(part.charAt(0) == 'O', part.substring(1)));
+        }
+        return replies;
+    }
+
+    /**
+     * Загрузить функцию в процесс без вызова (проверка текста заранее).
+     *
+     * @return ok с пустым текстом или ошибка загрузки (синтаксис, ошибка в теле def)
+     * @throws IOException если процесс упал или был уничтожен — воркер больше непригоден
+     */
+    public Reply load(int fnId, String source) throws IOException {
+        Reply def = define(fnId, source);
+        return def != null ? def : new Reply(true, "");
+    }
+
+    /** Загрузить функцию, если её ещё нет в процессе; null — загружена, иначе ответ с ошибкой. */
+    private Reply define(int fnId, String source) throws IOException {
+        if (defined.contains(fnId)) {
+            return null;
+        }
+        Reply def = request("D" + fnId + "\n" + source);
+        if (!def.ok) {
+            return def;
+        }
+        defined.add(fnId);
+        return null;
+    }
+
+    /** Health check: воркер жив и отвечает на запросы. */
+    public boolean ping() {
+        if (!process.isAlive()) {
+            return false;
+        }
+        try {
+            return request("P").ok;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    public boolean isAlive() {
+        return process.isAlive();
+    }
+
+    /**
+     * Убить процесс вместе со всеми его потомками (пользовательская функция могла запустить
+     * subprocess). Блокирующее чтение в потоке, использующем воркер, завершится с IOException.
+     */
+    public void destroy() {
+        // потомков собираем до убийства родителя: после его смерти они уйдут к init
+        process.descendants().forEach(ProcessHandle::destroyForcibly);
+        process.destroyForcibly();
+    }
+
+    /** Описание причины падения процесса для сообщения об ошибке. */
+    public String describeFailure(IOException e) {
+        try {
+            // stdout закрылся раньше, чем процесс успел завершиться — дадим ему мгновение
+            process.waitFor(100, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+        }
+        String reason = process.isAlive() ? e.toString() : "exited with code " + process.exitValue();
+        String stderr = lastStderrLine;
+        return stderr.isEmpty() ? reason : reason + ": " + stderr;
+    }
+
+    private Reply request(String payload) throws IOException {
+        byte[] data = payload.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(data.length);
+        out.write(data);
+        out.flush();
+
+        int length;
+        try {
+            length = in.readInt();
+        } catch (EOFException eof) {
+            throw new IOException("Python worker closed stdout", eof);
+        }
+        byte[] reply = new byte[length];
+        in.readFully(reply);
+        String text = new String(reply, StandardCharsets.UTF_8);
+        if (text.isEmpty()) {
+            throw new IOException("Python worker sent empty frame");
+        }
+        return new Reply(text.charAt(0) == 'O', text.substring(1));
+    }
+
+    /** Читает stderr в фоне, чтобы процесс не заблокировался на переполненном pipe. */
+    private void drainStderr() {
+        Thread t = new Thread(() -> {
+            try (BufferedReader r = new BufferedReader(
+                    new InputStreamReader(process.getErrorStream(), StandardCharsets.UTF_8))) {
+                String line;
+                while ((line = r.readLine()) != null) {
+                    if (!line.isBlank()) {
+                        lastStderrLine = line.trim();
+                    }
+                }
+            } catch (IOException ignored) {
+            }
+        }, "python-worker-stderr");
+        t.setDaemon(true);
+        t.start();
+    }
+
+    /** Ответ воркера: ok + текст результата, либо текст ошибки. */
+    public static class Reply {
+        public final boolean ok;
+        public final String text;
+
+        Reply(boolean ok, String text) {
+            this.ok = ok;
+            this.text = text;
+        }
+    }
+}
@@ -0,0 +1,216 @@
+package com.example.webflaxcalc.executions;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Set;
+import java.util.concurrent.BlockingDeque;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * PythonWorkerPool — пул резидентных процессов python ({@link PythonWorker}).
+ *
+ * Процессы запускаются лениво, по мере надобности, но не больше maxSize. Поток берёт
+ * воркер через {@link #acquire()} и возвращает через {@link #release(PythonWorker, boolean)};
+ * воркер, с которым что-то пошло не так (упал, убит по таймауту), в пул не возвращается.
+ *
+ * Фоновая задача периодически пингует свободные воркеры; упавшие процессы
+ * убираются и сразу перезапускаются, чтобы пул оставался прогретым.
+ *
+ * Каждый запущенный процесс учитывается до его фактического завершения (onExit):
+ * {@link #liveProcesses()} — запущены и ещё не завершились (в т.ч. убитые, но не умершие),
+ * {@link #reapedProcesses()} — сколько процессов завершилось за всё время.
+ * Воркер убивается вместе с деревом процессов ({@link PythonWorker#destroy()}).
+ */
+public class PythonWorkerPool {
+
+    /** Исходный код воркера (ресурс python/worker.py), передаётся интерпретатору через -c. */
+    private static final String WORKER_SCRIPT = loadWorkerScript();
+
+    /** Свободные воркеры; голова — последний возвращённый. */
+    private final BlockingDeque<PythonWorker> idle = new LinkedBlockingDeque<>();
+
+    /** Все живые воркеры пула (свободные и занятые) — для остановки. */
+    private final Set<PythonWorker> all = ConcurrentHashMap.newKeySet();
+
+    /** Разрешения на выдачу воркеров: не больше maxSize одновременно. */
+    private final Semaphore permits;
+
+    /** Номера функций: одинаковый текст — один номер во всех процессах. */
+    private final ConcurrentMap<String, Integer> functionIds = new ConcurrentHashMap<>();
+    private final AtomicInteger nextFunctionId = new AtomicInteger(0);
+
+    private final ScheduledExecutorService healthChecker;
+
+    /** Запущенные и ещё не завершившиеся процессы. */
+    private final AtomicInteger live = new AtomicInteger(0);
+
+    /** Завершившиеся процессы (за всё время). */
+    private final LongAdder reaped = new LongAdder();
+
+    /** Команда интерпретатора, которая сработала: сначала пробуем python3, затем python. */
+    private volatile String interpreter = "python3";
+
+    public PythonWorkerPool(int maxSize, long healthCheckMs) {
+        this.permits = new Semaphore(Math.max(1, maxSize));
+        this.healthChecker = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "python-worker-health");
+            t.setDaemon(true);
+            return t;
+        });
+        long period = Math.max(1, healthCheckMs);
+        healthChecker.scheduleWithFixedDelay(this::checkIdleWorkers, period, period, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Взять воркер. Если все maxSize воркеров заняты — ждёт освобождения;
+     * если свободных нет, но лимит не исчерпан — запускает новый процесс.
+     */
+    public PythonWorker acquire() throws IOException, InterruptedException {
+        permits.acquire();
+        try {
+            PythonWorker w;
+            while ((w = idle.pollFirst()) != null) {
+                if (w.isAlive()) {
+                    return w;
+                }
+                discard(w);
+            }
+            return spawn();
+        } catch (IOException | RuntimeException e) {
+            permits.release();
+            throw e;
+        }
+    }
+
+    /**
+     * Вернуть воркер в пул.
+     *
+     * @param healthy false — воркер непригоден (упал или был убит), процесс уничтожается
+     */
+    public void release(PythonWorker w, boolean healthy) {
+        if (healthy && w.isAlive()) {
+            idle.offerFirst(w);
+        } else {
+            discard(w);
+        }
+        permits.release();
+    }
+
+    /** Номер функции для протокола воркера. */
+    public int functionId(String source) {
+        return functionIds.computeIfAbsent(source, s -> nextFunctionId.incrementAndGet());
+    }
+
+    /**
+     * Забыть номер функции, которая не загрузилась: отвергнутые тексты (регистрация, reload)
+     * не должны копиться в таблице номеров. Процессы такую функцию не сохраняют.
+     */
+    public void forget(String source, int fnId) {
+        functionIds.remove(source, fnId);
+    }
+
+    /** Сколько текстов функций получили номера. */
+    public int functionCount() {
+        return functionIds.size();
+    }
+
+    /** Число процессов, принадлежащих пулу (свободных и занятых). */
+    public int size() {
+        return all.size();
+    }
+
+    /** Число запущенных и ещё не завершившихся процессов, включая убитые, но не успевшие умереть. */
+    public int liveProcesses() {
+        return live.get();
+    }
+
+    /** Сколько процессов завершилось за время работы пула. */
+    public long reapedProcesses() {
+        return reaped.sum();
+    }
+
+    /** Остановить health check и уничтожить все процессы (вместе с их потомками). */
+    public void close() {
+        healthChecker.shutdownNow();
+        for (PythonWorker w : all) {
+            w.destroy();
+        }
+        all.clear();
+        idle.clear();
+    }
+
+    /**
+     * Health check свободных воркеров. Каждый воркер на время проверки забирается из
+     * очереди вместе с разрешением, поэтому проверка не пересекается с вызовами.
+     * Упавший воркер заменяется новым процессом.
+     */
+    private void checkIdleWorkers() {
+        // снимок очереди: проверенные воркеры возвращаются в её конец
+        for (PythonWorker w : new ArrayList<>(idle)) {
+            if (!permits.tryAcquire()) {
+                return; // все воркеры заняты работой — проверим в следующий раз
+            }
+            try {
+                if (!idle.remove(w)) {
+                    continue;
+                }
+                if (w.ping()) {
+                    idle.offerLast(w);
+                } else {
+                    discard(w);
+                    idle.offerLast(spawn());
+                }
+            } catch (IOException | RuntimeException ignored) {
+                // перезапуск не удался — следующий acquire попробует ещё раз
+            } finally {
+                permits.release();
+            }
+        }
+    }
+
+    private PythonWorker spawn() throws IOException {
+        Process process;
+        try {
+            process = new ProcessBuilder(interpreter, "-u", "-c", WORKER_SCRIPT).start();
+        } catch (IOException ex) {
+            String fallback = "python3".equals(interpreter) ? "python" : "python3";
+            process = new ProcessBuilder(fallback, "-u", "-c", WORKER_SCRIPT).start();
+            interpreter = fallback;
+        }
+        live.incrementAndGet();
+        process.onExit().thenRun(() -> {
+            live.decrementAndGet();
+            reaped.increment();
+        });
+        PythonWorker w = new PythonWorker(process);
+        all.add(w);
+        return w;
+    }
+
+    private void discard(PythonWorker w) {
+        all.remove(w);
+        w.destroy();
+    }
+
+    private static String loadWorkerScript() {
+        try (InputStream is = PythonWorkerPool.class.getResourceAsStream("/python/worker.py")) {
+            if (is == null) {
+                throw new IllegalStateException("python/worker.py не найден");
+            }
+            return new String(is.readAllBytes(), StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
@@ -0,0 +1,114 @@
+package com.example.webflaxcalc.executions;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * ResultCache — общий для всех запросов кэш результатов чистых функций.
+ *
+ * Ключ — (язык, текст функции, x). Хэш ключа строится из hashCode текста (String кэширует
+ * его), а сравнение текста почти всегда сводится к сравнению ссылок: все итерации
+ * вызывают функцию одной и той же строкой из конфигурации.
+ *
+ * Политика вытеснения — LRU (LinkedHashMap в access-order), не больше maxSize записей.
+ * Кэшируются только успешные результаты: ошибки и таймауты могут быть временными.
+ */
+public class ResultCache {
+
+    private final int maxSize;
+
+    /** LinkedHashMap в access-order; доступ под его монитором. */
+    private final LinkedHashMap<Key, Double> entries;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    public ResultCache(int maxSize) {
+        this.maxSize = Math.max(1, maxSize);
+        this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Key, Double> eldest) {
+                if (size() > ResultCache.this.maxSize) {
+                    evictions.increment();
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    /**
+     * Найти результат.
+     *
+     * @return значение функции или null, если его нет в кэше
+     */
+    public Double get(String lang, String funcText, int x) {
+        Key key = new Key(lang, funcText, x);
+        Double value;
+        synchronized (entries) {
+            value = entries.get(key);
+        }
+        if (value != null) {
+            hits.increment();
+        } else {
+            misses.increment();
+        }
+        return value;
+    }
+
+    /** Запомнить результат. */
+    public void put(String lang, String funcText, int x, double value) {
+        Key key = new Key(lang, funcText, x);
+        synchronized (entries) {
+            entries.put(key, value);
+        }
+    }
+
+    public long hitCount() {
+        return hits.sum();
+    }
+
+    public long missCount() {
+        return misses.sum();
+    }
+
+    public long evictionCount() {
+        return evictions.sum();
+    }
+
+    public int size() {
+        synchronized (entries) {
+            return entries.size();
+        }
+    }
+
+    /** Ключ кэша: (язык, текст функции, x). */
+    private static final class Key {
+        final String lang;
+        final String funcText;
+        final int x;
+        final int hash;
+
+        Key(String lang, String funcText, int x) {
+            this.lang = lang;
+            this.funcText = funcText;
+            this.x = x;
+            this.hash = (funcText.hashCode() * 31 + lang.hashCode()) * 31 + x;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof Key)) return false;
+            Key k = (Key) o;
+            return x == k.x && hash == k.hash && lang.equals(k.lang) && funcText.equals(k.funcText);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+}
@@ -0,0 +1,233 @@
+package com.example.webflaxcalc.services;
+
+import com.example.webflaxcalc.configs.LimiterConfig;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+
+/**
+ * AdaptiveLimiter — адаптивный ограничитель одновременных вычислений между сервисом и
+ * FunctionExecutor. Лимит не задаётся вручную, а подстраивается по наблюдаемой задержке
+ * (градиентный алгоритм, как gradient-limiter в concurrency-limits):
+ *
+ *   gradient = clamp(rttTolerance × longRtt / rtt, 0.5, 1)
+ *   newLimit = limit × gradient + √limit
+ *   limit    = limit × (1 − smoothing) + newLimit × smoothing
+ *
+ * longRtt — скользящее среднее задержки, rtt — задержка очередного вызова. Пока задержка
+ * в пределах нормы, gradient = 1 и лимит растёт на √limit; когда вызовы начинают ждать
+ * в очередях (задержка растёт), gradient < 1 и лимит снижается. Отказ нижележащего
+ * исполнителя (ExecutionResult.rejected) — явный сигнал перегрузки: лимит × 0.9.
+ *
+ * Когда лимит исчерпан, вызов ждёт свободного места не дольше queueMs (0 — сразу отказ)
+ * и получает отказ вместо того, чтобы ждать в очередях исполнителя до таймаута.
+ *
+ * Вызовы, завершившиеся сразу (нативные функции, попадания в кэш), занимают место,
+ * но в оценку задержки не попадают — иначе они занижали бы longRtt.
+ */
+public class AdaptiveLimiter {
+
+    /** Сколько вызовов примерно усредняет longRtt. */
+    private static final int RTT_WINDOW = 100;
+
+    /** Во сколько раз снижается лимит при отказе исполнителя. */
+    private static final double BACKOFF = 0.9;
+
+    private final int minLimit;
+    private final int maxLimit;
+    private final double smoothing;
+    private final double rttTolerance;
+    private final long queueMs;
+
+    /** Поля ниже — под монитором this. */
+    private double limit;
+    private int inFlight;
+    private double longRttNanos;
+    private final ArrayDeque<CompletableFuture<Void>> waiters = new ArrayDeque<>();
+
+    private final LongAdder rejected = new LongAdder();
+
+    public AdaptiveLimiter(LimiterConfig settings) {
+        this.minLimit = Math.max(1, settings.getMinLimit());
+        this.maxLimit = Math.max(minLimit, settings.getMaxLimit());
+        this.smoothing = Math.min(1, Math.max(0.01, settings.getSmoothing()));
+        this.rttTolerance = Math.max(1, settings.getRttTolerance());
+        this.queueMs = Math.max(0, settings.getQueueMs());
+        this.limit = Math.min(maxLimit, Math.max(minLimit, settings.getInitialLimit()));
+    }
+
+    /**
+     * Выполнить вызов, если лимит позволяет (или дождавшись места не дольше queueMs).
+     *
+     * @param call запуск вычисления
+     * @param onReject результат для отказа (аргумент — текст ошибки)
+     * @param dropped результат, означающий перегрузку исполнителя (например, rejected)
+     * @return результат вызова; отмена отменяет вызов и освобождает место
+     */
+    public <T> CompletableFuture<T> call(Supplier<CompletableFuture<T>> call, Function<String, T> onReject,
+                                         Predicate<T> dropped) {
+        CompletableFuture<Void> permit = acquire();
+        if (permit == null) {
+            rejected.increment();
+            return CompletableFuture.completedFuture(onReject.apply(
+                    "limit rejected: " + currentLimit() + " calls in flight"));
+        }
+
+        CompletableFuture<T> result = new CompletableFuture<>();
+        permit.whenComplete((granted, timeout) -> {
+            if (timeout instanceof CancellationException) {
+                return; // вызов отменён, пока ждал места
+            }
+            if (timeout != null) {
+                rejected.increment();
+                result.complete(onReject.apply(
+                        "limit rejected: no free slot within " + queueMs + " ms (limit " + currentLimit() + ")"));
+                return;
+            }
+            if (result.isDone()) {
+                release(); // отменён, пока ждал места
+                return;
+            }
+            long start = System.nanoTime();
+            CompletableFuture<T> inner;
+            try {
+                inner = call.get();
+            } catch (RuntimeException e) {
+                release();
+                result.completeExceptionally(e);
+                return;
+            }
+            boolean immediate = inner.isDone();
+            inner.whenComplete((r, e) -> {
+                if (immediate || inner.isCancelled()) {
+                    release();
+                } else {
+                    sampleAndRelease(System.nanoTime() - start, e == null && dropped.test(r));
+                }
+                if (e != null) {
+                    result.completeExceptionally(e);
+                } else {
+                    result.complete(r);
+                }
+            });
+            result.whenComplete((r, e) -> {
+                if (result.isCancelled()) {
+                    inner.cancel(true);
+                }
+            });
+        });
+        result.whenComplete((r, e) -> {
+            if (result.isCancelled()) {
+                permit.cancel(false);
+            }
+        });
+        return result;
+    }
+
+    /** Место сразу (завершённый future), ожидание места (future с таймаутом queueMs) или null — отказ. */
+    private CompletableFuture<Void> acquire() {
+        CompletableFuture<Void> waiter;
+        synchronized (this) {
+            if (inFlight < (int) limit) {
+                inFlight++;
+                return CompletableFuture.completedFuture(null);
+            }
+            if (queueMs == 0) {
+                return null;
+            }
+            waiter = new CompletableFuture<>();
+            waiters.addLast(waiter);
+        }
+        CompletableFuture.delayedExecutor(queueMs, TimeUnit.MILLISECONDS).execute(() -> {
+            if (waiter.completeExceptionally(new TimeoutException())) {
+                synchronized (this) {
+                    waiters.remove(waiter);
+                }
+            }
+        });
+        return waiter;
+    }
+
+    /** Вызов завершён без оценки задержки. */
+    private void release() {
+        List<CompletableFuture<Void>> granted;
+        synchronized (this) {
+            inFlight--;
+            granted = grant();
+        }
+        complete(granted);
+    }
+
+    /** Вызов завершён за rttNanos: пересчитать лимит и освободить место. */
+    private void sampleAndRelease(long rttNanos, boolean dropped) {
+        List<CompletableFuture<Void>> granted;
+        synchronized (this) {
+            onSample(rttNanos, dropped);
+            inFlight--;
+            granted = grant();
+        }
+        complete(granted);
+    }
+
+    /**
+     * Пересчитать лимит по задержке завершившегося вызова (inFlight ещё включает его).
+     *
+     * @param dropped исполнитель отказал (перегрузка)
+     */
+    synchronized void onSample(long rttNanos, boolean dropped) {
+        if (dropped) {
+            limit = Math.max(minLimit, limit * BACKOFF);
+            return;
+        }
+        double rtt = Math.max(1, rttNanos);
+        longRttNanos = longRttNanos == 0 ? rtt : longRttNanos + (rtt - longRttNanos) / RTT_WINDOW;
+        // при загрузке меньше половины лимита задержка не говорит о перегрузке — лимит не трогаем
+        if (inFlight >= limit / 2) {
+            double gradient = Math.max(0.5, Math.min(1.0, rttTolerance * longRttNanos / rtt));
+            double newLimit = limit * gradient + Math.sqrt(limit);
+            limit = Math.max(minLimit, Math.min(maxLimit, limit * (1 - smoothing) + newLimit * smoothing));
+        }
+    }
+
+    /** Раздать освободившиеся места ожидающим (под монитором); завершать их — вне монитора. */
+    private List<CompletableFuture<Void>> grant() {
+        List<CompletableFuture<Void>> granted = new ArrayList<>();
+        while (inFlight < (int) limit && !waiters.isEmpty()) {
+            inFlight++;
+            granted.add(waiters.pollFirst());
+        }
+        return granted;
+    }
+
+    private void complete(List<CompletableFuture<Void>> granted) {
+        for (CompletableFuture<Void> waiter : granted) {
+            if (!waiter.complete(null)) {
+                release(); // ожидание уже истекло или отменено — место не нужно
+            }
+        }
+    }
+
+    /** Текущий лимит одновременных вычислений. */
+    public synchronized int currentLimit() {
+        return (int) limit;
+    }
+
+    /** Сколько вычислений выполняется сейчас. */
+    public synchronized int inFlight() {
+        return inFlight;
+    }
+
+    /** Сколько вызовов получили отказ. */
+    public long rejectedCount() {
+        return rejected.sum();
+    }
+}
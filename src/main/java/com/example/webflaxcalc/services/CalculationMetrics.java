@@ -0,0 +1,148 @@
+package com.example.webflaxcalc.services;
+
+import com.example.webflaxcalc.executions.Bulkhead;
+import com.example.webflaxcalc.executions.FunctionExecutor;
+import com.example.webflaxcalc.executions.ResultCache;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.ToIntFunction;
+
+/**
+ * CalculationMetrics — метрики Micrometer для вычислений сервиса (экспорт — actuator, /actuator/prometheus).
+ *
+ * На каждый результат функции:
+ *  - function.evaluation — Timer (компиляция + выполнение) с percentile-гистограммой
+ *    и клиентскими p50/p99/p999 (HdrHistogram); теги function, language;
+ *  - function.queue — Timer ожидания в очереди bulkhead'а;
+ *  - function.results — Counter; теги function, language, outcome = ok / error / timeout / rejected.
+ *
+ * Gauge'и состояния узла:
+ *  - executor.active, executor.queued (тег language) — занятые потоки и очередь bulkhead'ов языка
+ *    (bulkhead'ы отдельных функций суммируются в свой язык), executor.rejected — отказы;
+ *  - python.processes.live — живые python-процессы;
+ *  - limiter.limit, limiter.in.flight — адаптивный ограничитель (если включён);
+ *  - stream.backlog (тег function) — начатые, но не выведенные результаты всех потоков (nodeBufferStats);
+ *  - result.cache.hits / misses — кэш чистых функций.
+ *
+ * Глубина буфера каждого потока — stream.buffer.depth (DistributionSummary, тег function):
+ * значение buf каждой выведенной ordered-строки. Так видно распределение по всем потокам без тега
+ * на поток (неограниченная кардинальность).
+ *
+ * Метрики кэшируются по ключу тегов, поэтому запись на горячем пути — поиск в ConcurrentHashMap.
+ */
+public class CalculationMetrics {
+
+    private final MeterRegistry registry;
+
+    private final ConcurrentMap<String, Timer> evaluations = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, Timer> queueWaits = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, Counter> results = new ConcurrentHashMap<>();
+    private final ConcurrentMap<Integer, DistributionSummary> bufferDepths = new ConcurrentHashMap<>();
+
+    public CalculationMetrics(MeterRegistry registry) {
+        this.registry = registry;
+    }
+
+    /** Учесть результат функции functionNo на языке language ("js" / "python"). */
+    public void record(int functionNo, String language, FunctionExecutor.ExecutionResult r) {
+        String key = functionNo + ":" + language;
+        String outcome = outcome(r);
+        results.computeIfAbsent(key + ":" + outcome, k -> Counter.builder("function.results")
+                .description("Function evaluation results by outcome")
+                .tag("function", String.valueOf(functionNo))
+                .tag("language", language)
+                .tag("outcome", outcome)
+                .register(registry)).increment();
+        if (!r.ok) {
+            return;
+        }
+        evaluations.computeIfAbsent(key, k -> Timer.builder("function.evaluation")
+                .description("Function compile + execution time")
+                .tag("function", String.valueOf(functionNo))
+                .tag("language", language)
+                .publishPercentileHistogram()
+                .publishPercentiles(0.5, 0.99, 0.999)
+                .register(registry)).record(r.compileNanos + r.execNanos, TimeUnit.NANOSECONDS);
+        queueWaits.computeIfAbsent(key, k -> Timer.builder("function.queue")
+                .description("Time spent waiting in the executor bulkhead queue")
+                .tag("function", String.valueOf(functionNo))
+                .tag("language", language)
+                .publishPercentileHistogram()
+                .register(registry)).record(r.queueNanos, TimeUnit.NANOSECONDS);
+    }
+
+    /** Учесть значение buf выведенной строки (глубина буфера потока для функции functionNo). */
+    public void recordBufferDepth(int functionNo, int depth) {
+        bufferDepths.computeIfAbsent(functionNo, fn -> DistributionSummary.builder("stream.buffer.depth")
+                .description("Results started but not yet emitted in a stream, sampled per row")
+                .tag("function", String.valueOf(fn))
+                .publishPercentiles(0.5, 0.99)
+                .register(registry)).record(depth);
+    }
+
+    /** Gauge'и исполнителя: bulkhead'ы по языкам, python-процессы, кэш результатов. */
+    public void bindExecutor(FunctionExecutor executor) {
+        for (String language : new String[]{"js", "python"}) {
+            Gauge.builder("executor.active", executor, e -> sum(e, language, Bulkhead::activeCount))
+                    .description("Busy bulkhead threads")
+                    .tag("language", language)
+                    .register(registry);
+            Gauge.builder("executor.queued", executor, e -> sum(e, language, Bulkhead::queuedCount))
+                    .description("Calls waiting in bulkhead queues")
+                    .tag("language", language)
+                    .register(registry);
+            FunctionCounter.builder("executor.rejected", executor,
+                            e -> e.bulkheads().stream().filter(b -> b.name().startsWith(language))
+                                    .mapToLong(Bulkhead::rejectedCount).sum())
+                    .description("Calls rejected by full bulkheads")
+                    .tag("language", language)
+                    .register(registry);
+        }
+        Gauge.builder("python.processes.live", executor, FunctionExecutor::livePythonProcesses)
+                .description("Running resident python worker processes")
+                .register(registry);
+
+        ResultCache cache = executor.resultCache();
+        if (cache != null) {
+            FunctionCounter.builder("result.cache.hits", cache, ResultCache::hitCount).register(registry);
+            FunctionCounter.builder("result.cache.misses", cache, ResultCache::missCount).register(registry);
+            Gauge.builder("result.cache.size", cache, ResultCache::size).register(registry);
+        }
+    }
+
+    /** Gauge'и адаптивного ограничителя. */
+    public void bindLimiter(AdaptiveLimiter limiter) {
+        Gauge.builder("limiter.limit", limiter, AdaptiveLimiter::currentLimit)
+                .description("Current adaptive concurrency limit")
+                .register(registry);
+        Gauge.builder("limiter.in.flight", limiter, AdaptiveLimiter::inFlight).register(registry);
+        FunctionCounter.builder("limiter.rejected", limiter, AdaptiveLimiter::rejectedCount).register(registry);
+    }
+
+    /** Gauge суммарного по узлу backlog'а потоков для функции functionNo (только при nodeBufferStats). */
+    public void bindBacklog(CalculationServiceImp service, int functionNo) {
+        Gauge.builder("stream.backlog", service, s -> s.nodeBacklog(functionNo))
+                .description("Results started but not yet emitted, all streams of the node")
+                .tag("function", String.valueOf(functionNo))
+                .register(registry);
+    }
+
+    private static String outcome(FunctionExecutor.ExecutionResult r) {
+        if (r.ok) {
+            return "ok";
+        }
+        return r.rejected ? "rejected" : r.timedOut ? "timeout" : "error";
+    }
+
+    private static double sum(FunctionExecutor executor, String language, ToIntFunction<Bulkhead> value) {
+        return executor.bulkheads().stream().filter(b -> b.name().startsWith(language)).mapToInt(value).sum();
+    }
+}
@@ -1,10 +1,62 @@
 package com.example.webflaxcalc.services;
 
+import com.example.webflaxcalc.configs.ConfigJson;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferFactory;
+import org.springframework.core.io.buffer.DefaultDataBufferFactory;
 import reactor.core.publisher.Flux;
 
+import java.util.List;
+
 /**
  * Интерфейс для более четкой структуры
  */
 public interface CalculationService {
-    Flux<String> streamCsv(int count, boolean ordered);
+
+    /**
+     * Поток CSV-строк, каждая — отдельный DataBuffer в SSE-кадре ("data:<строка>\n\n").
+     *
+     * @param functions функции потока (из {@link #functions()}), номера в строках — 1..N;
+     *                  null или пустой список — функции из config.json
+     * @param bufferFactory фабрика буферов ответа (в WebFlux — пуловая фабрика Netty)
+     */
+    Flux<DataBuffer> streamCsv(int count, boolean ordered, List<RegisteredFunction> functions,
+                               DataBufferFactory bufferFactory);
+
+    /**
+     * Bulk-режим: те же строки, но без расписания interval — итерации считаются
+     * параллельными чанками так быстро, как возможно.
+     */
+    Flux<DataBuffer> streamCsvBulk(int count, boolean ordered, List<RegisteredFunction> functions,
+                                   DataBufferFactory bufferFactory);
+
+    /**
+     * Применить новый config.json без перезапуска: функции готовятся заранее, затем подменяются
+     * атомарно; идущие потоки досчитываются со своей версией.
+     *
+     * @return номер новой версии
+     * @throws IllegalArgumentException функция не компилируется — текущая версия остаётся
+     */
+    long reload(ConfigJson next);
+
+    /** Функции потока по умолчанию — из текущей версии config.json. */
+    List<RegisteredFunction> defaultFunctions();
+
+    /** Реестр функций, заранее скомпилированных через POST /api/functions. */
+    FunctionRegistry functions();
+
+    /** Поток для функций из config.json. */
+    default Flux<DataBuffer> streamCsv(int count, boolean ordered, DataBufferFactory bufferFactory) {
+        return streamCsv(count, ordered, null, bufferFactory);
+    }
+
+    /** Bulk-режим для функций из config.json. */
+    default Flux<DataBuffer> streamCsvBulk(int count, boolean ordered, DataBufferFactory bufferFactory) {
+        return streamCsvBulk(count, ordered, null, bufferFactory);
+    }
+
+    /** То же с буферами в куче — для тестов и вызовов вне HTTP-ответа. */
+    default Flux<DataBuffer> streamCsv(int count, boolean ordered) {
+        return streamCsv(count, ordered, DefaultDataBufferFactory.sharedInstance);
+    }
 }
@@ -2,52 +2,254 @@ package com.example.webflaxcalc.services;
 
 
 import com.example.webflaxcalc.configs.ConfigJson;
+import com.example.webflaxcalc.configs.FunctionConfig;
 import com.example.webflaxcalc.executions.FunctionExecutor;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferFactory;
+import org.springframework.core.io.buffer.DataBufferUtils;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
 import reactor.core.scheduler.Schedulers;
 
+import jakarta.annotation.PreDestroy;
 import org.springframework.stereotype.Service;
 
 import java.time.Duration;
-import java.util.Locale;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.IntStream;
 
 /**
- * CalculationService — формирует Flux<String> с CSV-строками.
+ * CalculationService — формирует Flux<DataBuffer> с CSV-строками (по строке в SSE-кадре).
+ *
+ * Поток вычисляет N функций (список functions в config.json или f в запросе; по умолчанию
+ * function1 и function2), номера функций в строках — 1..N.
  *
  * Поведение:
  *  - ordered = true:
- *      Для каждой итерации i запускаются обе функции параллельно.
- *      Выводится строка только когда обе функции завершены.
- *      Формат (успех): <i>,<res1>,<time1>,<buf1>,<res2>,<time2>,<buf2>
+ *      Для каждой итерации i запускаются все функции параллельно.
+ *      Выводится строка только когда все функции завершены.
+ *      Формат (успех): <i>,<res1>,<time1>,<buf1>,...,<resN>,<timeN>,<bufN>
  *      Формат (ошибка): <i>,<fnNumber>,error: <msg>
  *
  *  - ordered = false:
- *      Каждая завершившаяся функция отправляется сразу:
+ *      Каждая завершившаяся функция отправляется сразу (N строк на итерацию):
  *      Формат (успех): <i>,<fnNumber>,<result>,<time>
  *      Формат (ошибка): <i>,<fnNumber>,error: <msg>
  *
  * Реализация:
- *  - Для тайминга запуска итераций используется delayElement.
- *  - Блокирующие вызовы (ScriptEngine, ProcessBuilder) выполняются на boundedElastic scheduler.
+ *  - Итерации запускает IterationTicker по фиксированной сетке (start + i × interval), без дрейфа;
+ *    schedule = "fixed-delay" возвращает прежнее поведение: итерации идут строго друг за другом
+ *    (concatMap), и interval отсчитывается от завершения предыдущей.
+ *  - В fixed-rate итерации конвейеризованы: новая итерация стартует по расписанию, даже если
+ *    предыдущие ещё считаются (не больше maxInFlight одновременно); в ordered-режиме
+ *    flatMapSequential буферизует готовые строки и выдаёт их в порядке итераций.
+ *  - Внутри итерации одновременно считается не больше functionParallelism функций;
+ *    расписание итераций общее для всех N функций.
+ *  - Счётчики buf ведутся отдельно для каждой подписки (StreamState, создаётся в Flux.defer),
+ *    поэтому одновременные клиенты не влияют на столбцы buf друг друга.
+ *  - Если в ordered-режиме все функции (не больше MAX_FUSED_JS) — JS, итерация считается одним
+ *    вызовом движка (executeJsAllAsync), время и буферы по-прежнему выводятся для каждой функции
+ *    отдельно. Unordered-режим всегда вызывает функции по отдельности: слитный вызов задержал бы
+ *    строки быстрых функций до конца самой медленной.
+ *  - batchSize > 1: значения считаются батчами с упреждением (один вызов движка или python-воркера
+ *    на batchSize итераций) — для малых interval, где вызов на каждый x упирается в накладные расходы.
+ *  - interval = 0 (или mode=bulk в запросе): bulk-режим без расписания — чанки итераций
+ *    считаются параллельно на ForkJoinPool и выдаются через ограниченное окно (streamCsvBulk).
+ *  - timingColumns = true: в конец строк добавляются фазы времени каждой функции в наносекундах —
+ *    ожидание в очереди, компиляция / запуск процесса, выполнение (ExecutionResult.*Nanos).
+ *  - Функции потока — из config.json или зарегистрированные заранее (FunctionRegistry, параметры f / f1 / f2):
+ *    их язык известен после регистрации, скрипт уже скомпилирован или загружен в python-процесс.
+ *  - config.json можно менять на ходу ({@link #reload}, см. ConfigWatcher): новые функции готовятся
+ *    заранее, затем версия настроек подменяется атомарно (AtomicReference). Поток закреплён за
+ *    версией, действовавшей при запросе, и досчитывается с ней; новые потоки берут новую версию.
+ *    Исполнитель, его кэши и прогретые движки при этом сохраняются.
+ *  - Каждый результат функции учитывается в метриках Micrometer ({@link CalculationMetrics}),
+ *    они доступны через actuator (/actuator/prometheus).
+ *  - Строки пишутся сразу в DataBuffer ({@link CsvRowEncoder}) без String.format;
+ *    буферы, отброшенные при отмене потока, освобождаются (doOnDiscard).
+ *  - limiter.enabled: перед executor стоит AdaptiveLimiter — число одновременных вычислений
+ *    подстраивается по задержке, сверх лимита вызов сразу получает строку ошибки "limit rejected".
+ *    Батчи (batchSize > 1, bulk-режим) ограничены своими окнами и идут мимо него.
+ *  - Функции вычисляются асинхронно (FunctionExecutor.execute*Async): поток реактора
+ *    не блокируется, а таймауты отсчитывает общий таймер исполнителя.
+ *  - Отмена потока (клиент отключился) отменяет future вычислений (Mono.fromFuture(..., false)),
+ *    и executor убивает python-процесс; начатый JS-вызов дорабатывает в своём потоке (Nashorn
+ *    не прерывается), но строк потока уже не задерживает.
  */
 @Service
 public class CalculationServiceImp implements CalculationService {
 
-    private final ConfigJson config;
+    /** Сколько JS-функций итерации ещё считаются одним слитным вызовом. */
+    static final int MAX_FUSED_JS = 4;
+
     private final FunctionExecutor executor;
 
+    /** Адаптивный ограничитель одновременных вычислений; null, если выключен (limiter.enabled). */
+    private final AdaptiveLimiter limiter;
+
+    /**
+     * Суммарные по узлу счётчики "начатых, но ещё не выведенных" результатов по номерам функций
+     * (все потоки вместе); null, если nodeBufferStats выключен. Счётчик номера создаётся при первом
+     * потоке с таким числом функций. LongAdder — чтобы параллельные потоки не конкурировали за одну ячейку.
+     */
+    private final ConcurrentMap<Integer, LongAdder> nodeUnpaired;
+
+    /**
+     * Scheduler поверх work-stealing пула bulk-режима (по потоку на ядро): на нём считаются
+     * нативные части чанков; интерпретируемые функции уходят в пулы FunctionExecutor, поток
+     * не блокируется. Создаётся при первом bulk-потоке ({@link #bulkScheduler()}), null — ещё не нужен.
+     */
+    private Scheduler bulkScheduler;
+
+    /** Метрики вычислений (Micrometer). */
+    private final CalculationMetrics metrics;
+
+    /** Функции, зарегистрированные через POST /api/functions. */
+    private final FunctionRegistry registry;
+
     /**
-     * Счётчики количества "начатых, но еще не выведенных" результатов
-     * для функций 1 и 2 — используются для вычисления 'buffer' value.
+     * Текущая версия настроек потоков и функций из config.json (для потоков без f / f1 / f2).
+     * Подменяется целиком при reload; секции executor и limiter, nodeBufferStats и maxFunctions
+     * берутся из исходного config — они определяют пулы и применяются только при перезапуске.
      */
-    private final AtomicInteger unpaired1 = new AtomicInteger(0);
-    private final AtomicInteger unpaired2 = new AtomicInteger(0);
+    private final AtomicReference<ConfigVersion> current;
 
     public CalculationServiceImp(ConfigJson config) {
-        this.config = config;
-        this.executor = new FunctionExecutor();
+        this(config, new SimpleMeterRegistry());
+    }
+
+    @Autowired
+    public CalculationServiceImp(ConfigJson config, MeterRegistry registry) {
+        validateSchedule(config);
+        this.executor = new FunctionExecutor(config.getExecutor());
+        this.limiter = config.getLimiter() != null && config.getLimiter().isEnabled()
+                ? new AdaptiveLimiter(config.getLimiter()) : null;
+        this.nodeUnpaired = config.isNodeBufferStats() ? new ConcurrentHashMap<>() : null;
+
+        this.registry = new FunctionRegistry(executor, config.getMaxFunctions(), config.isFunctionRegistration());
+        this.current = new AtomicReference<>(new ConfigVersion(0, config, configFunctions(config)));
+        this.metrics = new CalculationMetrics(registry);
+        metrics.bindExecutor(executor);
+        if (limiter != null) {
+            metrics.bindLimiter(limiter);
+        }
+    }
+
+    @Override
+    public FunctionRegistry functions() {
+        return registry;
+    }
+
+    /**
+     * Применить новый config.json без перезапуска. Функции готовятся (компиляция, загрузка в python)
+     * в вызывающем потоке, до подмены; если хоть одна не готовится, текущая версия остаётся.
+     * Уже идущие потоки досчитываются со своей версией.
+     *
+     * @return номер новой версии (исходный config — версия 0)
+     * @throws IllegalArgumentException функция пустая или не компилируется, interval < 0 или неизвестные schedule / catchUp
+     */
+    @Override
+    public long reload(ConfigJson next) {
+        if (next.getInterval() < 0) {
+            throw new IllegalArgumentException("interval < 0: " + next.getInterval());
+        }
+        validateSchedule(next);
+        List<FunctionConfig> configured = next.functionList();
+        for (int k = 0; k < configured.size(); k++) {
+            FunctionConfig fn = configured.get(k);
+            if (fn == null || fn.getFunction() == null || fn.getFunction().isBlank()) {
+                throw new IllegalArgumentException("function" + (k + 1) + ": function is empty");
+            }
+        }
+        List<RegisteredFunction> functions = configFunctions(next);
+        for (int k = 0; k < functions.size(); k++) {
+            RegisteredFunction fn = functions.get(k);
+            FunctionExecutor.ExecutionResult prepared = executor.prepare(fn.function, fn.isJs());
+            if (!prepared.ok) {
+                throw new IllegalArgumentException("function" + (k + 1) + ": " + prepared.error);
+            }
+        }
+        return current.updateAndGet(prev -> new ConfigVersion(prev.version + 1, next, functions)).version;
+    }
+
+    /** Функции потока по умолчанию из config.json (без подготовки — она при первом вызове или в reload). */
+    private static List<RegisteredFunction> configFunctions(ConfigJson config) {
+        List<RegisteredFunction> functions = new ArrayList<>();
+        for (FunctionConfig fn : config.functionList()) {
+            functions.add(RegisteredFunction.fromConfig(fn));
+        }
+        return List.copyOf(functions);
+    }
+
+    @Override
+    public List<RegisteredFunction> defaultFunctions() {
+        return current.get().functions;
+    }
+
+    /** Номер текущей версии config.json (0 — загруженный при старте). */
+    public long configVersion() {
+        return current.get().version;
+    }
+
+    /** Ограничитель одновременных вычислений (для метрик); null, если выключен. */
+    public AdaptiveLimiter limiter() {
+        return limiter;
+    }
+
+    /**
+     * Сколько результатов функции functionNo (1..N) сейчас начато, но ещё не выведено
+     * во всех потоках узла; -1, если nodeBufferStats выключен.
+     */
+    public long nodeBacklog(int functionNo) {
+        if (nodeUnpaired == null) {
+            return -1;
+        }
+        LongAdder adder = nodeUnpaired.get(functionNo);
+        return adder == null ? 0 : adder.sum();
+    }
+
+    /** Исполнитель функций сервиса (для тестов). */
+    FunctionExecutor executor() {
+        return executor;
+    }
+
+    /** Общие по узлу счётчики для функций 1..n (null, если nodeBufferStats выключен); gauge — при создании. */
+    private LongAdder[] nodeCounters(int n) {
+        if (nodeUnpaired == null) {
+            return null;
+        }
+        LongAdder[] counters = new LongAdder[n];
+        for (int k = 0; k < n; k++) {
+            counters[k] = nodeUnpaired.computeIfAbsent(k + 1, functionNo -> {
+                metrics.bindBacklog(this, functionNo);
+                return new LongAdder();
+            });
+        }
+        return counters;
+    }
+
+    /** Остановить пулы исполнителя (в т.ч. резидентные python-процессы) вместе с сервисом. */
+    @PreDestroy
+    public void destroy() {
+        synchronized (this) {
+            if (bulkScheduler != null) {
+                bulkScheduler.dispose(); // закрывает и ForkJoinPool
+            }
+        }
+        executor.destroy();
     }
 
     /**
@@ -55,141 +257,520 @@ public class CalculationServiceImp implements CalculationService {
      *
      * @param count количество итераций
      * @param ordered режим упорядоченного вывода
-     * @return Flux<String> — поток CSV-строк
+     * @param functions функции потока; null или пустой список — из config.json
+     * @param bufferFactory фабрика буферов для строк
+     * @return Flux<DataBuffer> — поток CSV-строк в SSE-кадрах
      */
     @Override
-    public Flux<String> streamCsv(int count, boolean ordered) {
-        int intervalMs = Math.max(1, config.getInterval());
+    public Flux<DataBuffer> streamCsv(int count, boolean ordered, List<RegisteredFunction> functions,
+                                      DataBufferFactory bufferFactory) {
+        // поток закреплён за версией настроек, действующей сейчас
+        ConfigVersion pinned = current.get();
+        ConfigJson settings = pinned.config;
+        if (settings.getInterval() == 0) {
+            return streamCsvBulk(count, ordered, functions, pinned, bufferFactory);
+        }
+        List<RegisteredFunction> fns = functions == null || functions.isEmpty() ? pinned.functions : functions;
+        int intervalMs = Math.max(1, settings.getInterval());
+
+        // Состояние буферов создаётся на каждую подписку: столбцы buf отражают только этот поток
+        return Flux.defer(() -> {
+            int batchSize = settings.getBatchSize();
+            Lookahead[] ahead = null;
+            if (batchSize > 1) {
+                ahead = new Lookahead[fns.size()];
+                for (int k = 0; k < ahead.length; k++) {
+                    ahead[k] = new Lookahead(executor, fns.get(k), batchSize, count);
+                }
+            }
+            StreamState state = new StreamState(nodeCounters(fns.size()), settings, fns,
+                    ordered && batchSize <= 1 && canFuseJs(fns), ahead);
+            int maxInFlight = Math.max(1, settings.getMaxInFlight());
+            Flux<DataBuffer> rows;
+            if (isFixedRate(settings)) {
+                // Итерации стартуют по фиксированной сетке start + i × interval, не дожидаясь завершения
+                // предыдущих (не больше maxInFlight одновременно); пропущенные из-за этого лимита тики
+                // обрабатываются политикой catchUp
+                Flux<Integer> ticks = IterationTicker.ticks(count, intervalMs,
+                        IterationTicker.CatchUp.parse(settings.getCatchUp()));
+                rows = ordered
+                        // flatMapSequential отдаёт строки строго по порядку итераций
+                        ? ticks.flatMapSequential(i -> processIterationOrdered(i, state, bufferFactory), maxInFlight)
+                        // в unordered режиме результаты выводятся по мере готовности
+                        : ticks.flatMap(i -> processIterationUnordered(i, state, bufferFactory), maxInFlight);
+            } else if (ordered) {
+                // fixed-delay: следующая итерация стартует через interval после завершения предыдущей,
+                // без конвейера — итерации не перекрываются
+                rows = Flux.range(1, count)
+                        .concatMap(i -> Mono.just(i)
+                                .delayElement(Duration.ofMillis(intervalMs))
+                                .flatMap(it -> processIterationOrdered(it, state, bufferFactory)));
+            } else {
+                // fixed-delay: следующая итерация стартует через interval после завершения предыдущей
+                rows = Flux.range(1, count)
+                        .concatMap(i -> Mono.just(i)
+                                .delayElement(Duration.ofMillis(intervalMs))
+                                .flatMapMany(it -> processIterationUnordered(it, state, bufferFactory))
+                        );
+            }
+            return rows
+                    .doOnDiscard(DataBuffer.class, DataBufferUtils::release)
+                    .doFinally(sig -> state.close());
+        });
+    }
+
+    /**
+     * Bulk-режим ("как можно быстрее"): без расписания. Итерации 1..count делятся на чанки
+     * по bulkChunkSize; каждый чанк считается батчем каждой функции (FunctionExecutor.execute*BatchAsync)
+     * на work-stealing пуле bulk-режима, чанки — параллельно. В ordered-режиме flatMapSequential
+     * выдаёт чанки по порядку, держа в работе не больше bulkWindow чанков (ограниченное окно
+     * переупорядочивания); в unordered-режиме строки чанка выходят, как только он посчитан.
+     */
+    @Override
+    public Flux<DataBuffer> streamCsvBulk(int count, boolean ordered, List<RegisteredFunction> functions,
+                                          DataBufferFactory bufferFactory) {
+        return streamCsvBulk(count, ordered, functions, current.get(), bufferFactory);
+    }
+
+    private Flux<DataBuffer> streamCsvBulk(int count, boolean ordered, List<RegisteredFunction> functions,
+                                           ConfigVersion pinned, DataBufferFactory bufferFactory) {
+        ConfigJson settings = pinned.config;
+        List<RegisteredFunction> fns = functions == null || functions.isEmpty() ? pinned.functions : functions;
+        int chunkSize = Math.max(1, settings.getBulkChunkSize());
+        int chunks = (int) ((count + (long) chunkSize - 1) / chunkSize);
+        // чанк — одна задача bulkhead'а на функцию: окно сверх его потоков стояло бы в очереди
+        // дольше queueTimeoutMs и возвращалось строками "rejected"
+        int window = Math.max(1, settings.getBulkWindow());
+        for (RegisteredFunction fn : fns) {
+            window = Math.min(window, Math.max(1, executor.bulkheadThreads(fn.isJs())));
+        }
+        int chunksInFlight = window;
+
+        return Flux.defer(() -> {
+            StreamState state = new StreamState(nodeCounters(fns.size()), settings, fns, false, null);
+            Flux<Integer> indexes = Flux.range(0, Math.max(0, chunks));
+            Flux<DataBuffer> rows = ordered
+                    ? indexes.flatMapSequential(c -> evaluateChunk(c, chunkSize, count, state), chunksInFlight)
+                            .flatMapIterable(chunk -> chunkRows(chunk, true, state, bufferFactory))
+                    : indexes.flatMap(c -> evaluateChunk(c, chunkSize, count, state), chunksInFlight)
+                            .flatMapIterable(chunk -> chunkRows(chunk, false, state, bufferFactory));
+            return rows
+                    .doOnDiscard(DataBuffer.class, DataBufferUtils::release)
+                    .doFinally(sig -> state.close());
+        });
+    }
+
+    /** Посчитать чанк с номером index: каждая функция батчем; нативная часть — в потоке пула bulk-режима. */
+    private Mono<Chunk> evaluateChunk(int index, int chunkSize, int count, StreamState state) {
+        int first = index * chunkSize + 1;
+        int[] xs = IntStream.rangeClosed(first, Math.min(count, first + chunkSize - 1)).toArray();
+        return Flux.range(0, state.size())
+                .flatMapSequential(k -> Mono.fromFuture(() -> {
+                    state.begin(k, xs.length);
+                    return runBatch(state.function(k), xs);
+                }, false), state.parallelism)
+                .collectList()
+                .map(batches -> new Chunk(xs, batches))
+                .subscribeOn(bulkScheduler());
+    }
+
+    /** Scheduler bulk-режима; пул создаётся при первом обращении. */
+    private synchronized Scheduler bulkScheduler() {
+        if (bulkScheduler == null) {
+            bulkScheduler = Schedulers.fromExecutorService(new ForkJoinPool(Runtime.getRuntime().availableProcessors()));
+        }
+        return bulkScheduler;
+    }
 
+    private CompletableFuture<FunctionExecutor.BatchResult> runBatch(RegisteredFunction fn, int[] xs) {
+        return fn.isJs() ? executor.executeJsBatchAsync(fn.function, xs) : executor.executePythonBatchAsync(fn.function, xs);
+    }
+
+    /** Строки чанка; создаются лениво, по мере запроса подписчиком. */
+    private Iterable<DataBuffer> chunkRows(Chunk chunk, boolean ordered, StreamState state,
+                                           DataBufferFactory bufferFactory) {
+        int n = chunk.xs.length;
+        int functions = chunk.batches.size();
         if (ordered) {
-            // Конкатенируем итерации последовательно, каждая итерация стартует через interval
-            return Flux.range(1, count)
-                    .concatMap(i -> Mono.just(i)
-                            .delayElement(Duration.ofMillis(intervalMs))
-                            .flatMap(this::processIterationOrdered)
-                    );
-        } else {
-            // В unordered режиме итерации также стартуют через interval, но результаты выводятся по мере готовности
-            return Flux.range(1, count)
-                    .concatMap(i -> Mono.just(i)
-                            .delayElement(Duration.ofMillis(intervalMs))
-                            .flatMapMany(this::processIterationUnordered)
-                    );
+            return () -> IntStream.range(0, n)
+                    .mapToObj(j -> {
+                        FunctionResult[] rs = new FunctionResult[functions];
+                        for (int k = 0; k < functions; k++) {
+                            rs[k] = toFunctionResult(state, chunk.xs[j], k + 1, chunk.batches.get(k).get(j));
+                        }
+                        return toOrderedRow(chunk.xs[j], rs, state, bufferFactory);
+                    })
+                    .iterator();
         }
+        return () -> IntStream.range(0, functions * n)
+                .mapToObj(j -> {
+                    int k = j % functions;
+                    state.end(k);
+                    return formatUnordered(state, bufferFactory, chunk.xs[j / functions], k + 1,
+                            chunk.batches.get(k).get(j / functions));
+                })
+                .iterator();
+    }
+
+    /**
+     * Проверить schedule и catchUp при загрузке и reload — иначе опечатка всплыла бы
+     * ошибкой уже внутри потока, при первом запросе.
+     */
+    private static void validateSchedule(ConfigJson settings) {
+        String schedule = settings.getSchedule();
+        if (schedule != null && !"fixed-rate".equalsIgnoreCase(schedule) && !"fixed-delay".equalsIgnoreCase(schedule)) {
+            throw new IllegalArgumentException("unknown schedule: " + schedule + " (expected fixed-rate or fixed-delay)");
+        }
+        IterationTicker.CatchUp.parse(settings.getCatchUp());
+    }
+
+    /** Режим расписания: fixed-rate (по умолчанию) или прежний fixed-delay. */
+    private static boolean isFixedRate(ConfigJson settings) {
+        return !"fixed-delay".equalsIgnoreCase(settings.getSchedule());
+    }
+
+    /**
+     * Все функции — JS, их не больше MAX_FUSED_JS и ни одна не использует кэш чистых функций:
+     * тогда итерацию можно посчитать одним вызовом движка (FunctionExecutor.executeJsAllAsync).
+     * Слитный вызов выполняет функции подряд, без functionParallelism, поэтому он только для малых N.
+     */
+    private static boolean canFuseJs(List<RegisteredFunction> functions) {
+        return functions.size() > 1 && functions.size() <= MAX_FUSED_JS
+                && functions.stream().allMatch(fn -> fn.isJs() && !fn.pure);
     }
 
     /**
      * Обработка одной итерации в ordered-режиме:
-     * запустить обе функции параллельно и дождаться обеих, затем вернуть одну CSV-строку.
-     */
-    private Mono<String> processIterationOrdered(int iteration) {
-        // Запуск функции 1
-        Mono<FunctionResult> m1 = Mono.fromCallable(() -> {
-                    // пометим, что результат функции 1 "в пути"
-                    unpaired1.incrementAndGet();
-                    FunctionExecutor.ExecutionResult r = detectAndRun(config.getFunction1(), iteration);
-                    if (r.ok) {
-                        return new FunctionResult(iteration, 1, r.value, r.timeMs, null);
-                    } else {
-                        return new FunctionResult(iteration, 1, Double.NaN, -1, r.error);
-                    }
-                })
-                .subscribeOn(Schedulers.boundedElastic());
-
-        // Запуск функции 2
-        Mono<FunctionResult> m2 = Mono.fromCallable(() -> {
-                    unpaired2.incrementAndGet();
-                    FunctionExecutor.ExecutionResult r = detectAndRun(config.getFunction2(), iteration);
-                    if (r.ok) {
-                        return new FunctionResult(iteration, 2, r.value, r.timeMs, null);
-                    } else {
-                        return new FunctionResult(iteration, 2, Double.NaN, -1, r.error);
-                    }
-                })
-                .subscribeOn(Schedulers.boundedElastic());
-
-        // zip — дождёмся обеих
-        return Mono.zip(m1, m2)
-                .map(tuple -> {
-                    FunctionResult r1 = tuple.getT1();
-                    FunctionResult r2 = tuple.getT2();
-
-                    // читаем значения буферов до уменьшения (сколько было "в пути" перед выводом).
-                    int beforeBuf1 = unpaired1.get();
-                    int beforeBuf2 = unpaired2.get();
-
-                    // уменьшаем счётчики — эти элементы сейчас выводятся
-                    unpaired1.decrementAndGet();
-                    unpaired2.decrementAndGet();
-
-                    // Если одна из функций вернула ошибку — по заданию отдадим строку ошибки
-                    if (r1.error != null) {
-                        // Формат ошибки (как в задании): "<iter>,<fnNumber>,error: <msg>"
-                        return String.format("%d,%d,error: %s", iteration, r1.functionNo, sanitize(r1.error));
-                    } else if (r2.error != null) {
-                        return String.format("%d,%d,error: %s", iteration, r2.functionNo, sanitize(r2.error));
-                    } else {
-                        // Обычная успешная строка (7 полей)
-                        return String.format(Locale.ROOT, "%d,%.6f,%d,%d,%.6f,%d,%d",
-                                iteration,
-                                r1.value, r1.timeMs, Math.max(0, beforeBuf1 - 1),
-                                r2.value, r2.timeMs, Math.max(0, beforeBuf2 - 1)
-                        );
-                    }
-                });
+     * запустить функции параллельно (не больше functionParallelism одновременно; или одним
+     * слитным JS-вызовом) и дождаться всех, затем вернуть одну CSV-строку.
+     */
+    private Mono<DataBuffer> processIterationOrdered(int iteration, StreamState state, DataBufferFactory bufferFactory) {
+        Mono<FunctionResult[]> all;
+        if (state.fuseJs) {
+            // все функции одним вызовом движка: одна задача, один таймаут
+            all = Mono.fromFuture(() -> {
+                        state.beginAll();
+                        return runJsFused(state, iteration);
+                    }, false)
+                    .map(rs -> {
+                        FunctionResult[] results = new FunctionResult[rs.size()];
+                        for (int k = 0; k < results.length; k++) {
+                            results[k] = toFunctionResult(state, iteration, k + 1, rs.get(k));
+                        }
+                        return results;
+                    });
+        } else {
+            // Запуск функции k: поток не блокируется — Mono завершится, когда executor завершит future;
+            // flatMapSequential собирает результаты в порядке функций
+            all = Flux.range(0, state.size())
+                    .flatMapSequential(k -> Mono.fromFuture(() -> {
+                                // пометим, что результат функции k "в пути"
+                                state.begin(k, 1);
+                                return runFunction(state, k, iteration);
+                            }, false)
+                            .map(r -> toFunctionResult(state, iteration, k + 1, r)), state.parallelism)
+                    .collectList()
+                    .map(list -> list.toArray(new FunctionResult[0]));
+        }
+
+        return all.map(rs -> toOrderedRow(iteration, rs, state, bufferFactory));
+    }
+
+    /** Строка ordered-режима для результатов итерации; уменьшает счётчики буферов потока. */
+    private DataBuffer toOrderedRow(int iteration, FunctionResult[] rs, StreamState state,
+                                    DataBufferFactory bufferFactory) {
+        // значения буферов до уменьшения (сколько было "в пути" перед выводом);
+        // счётчики уменьшаются — эти элементы сейчас выводятся
+        int n = rs.length;
+        int[] bufs = new int[n];
+        for (int k = 0; k < n; k++) {
+            bufs[k] = Math.max(0, state.end(k) - 1);
+            metrics.recordBufferDepth(k + 1, bufs[k]);
+        }
+
+        // Если одна из функций вернула ошибку — по заданию отдадим строку ошибки
+        for (FunctionResult r : rs) {
+            if (r.error != null) {
+                // Формат ошибки (как в задании): "<iter>,<fnNumber>,error: <msg>"
+                return CsvRowEncoder.errorRow(bufferFactory, iteration, r.functionNo, r.error);
+            }
+        }
+
+        // Обычная успешная строка (1 + 3N полей)
+        double[] values = new double[n];
+        long[] times = new long[n];
+        long[] phases = state.settings.isTimingColumns() ? new long[3 * n] : null;
+        for (int k = 0; k < n; k++) {
+            values[k] = rs[k].value;
+            times[k] = rs[k].timeMs;
+            if (phases != null) {
+                phases[3 * k] = rs[k].queueNanos;
+                phases[3 * k + 1] = rs[k].compileNanos;
+                phases[3 * k + 2] = rs[k].execNanos;
+            }
+        }
+        return CsvRowEncoder.orderedRow(bufferFactory, iteration, values, times, bufs, phases);
     }
 
     /**
      * Обработка одной итерации в unordered-режиме.
-     * Запускаем две параллельные задачи, каждая возвращает свою строку,
-     * и возвращаем Flux из результатов (они будут приходить по мере готовности).
-     */
-    private Flux<String> processIterationUnordered(int iteration) {
-        Mono<String> a = Mono.fromCallable(() -> {
-                    unpaired1.incrementAndGet();
-                    FunctionExecutor.ExecutionResult r = detectAndRun(config.getFunction1(), iteration);
-                    if (r.ok) {
-                        return String.format(Locale.ROOT, "%d,1,%.6f,%d", iteration, r.value, r.timeMs);
-                    } else {
-                        return String.format("%d,1,error: %s", iteration, sanitize(r.error));
-                    }
-                })
-                .subscribeOn(Schedulers.boundedElastic())
-                .doFinally(sig -> unpaired1.decrementAndGet());
-
-        Mono<String> b = Mono.fromCallable(() -> {
-                    unpaired2.incrementAndGet();
-                    FunctionExecutor.ExecutionResult r = detectAndRun(config.getFunction2(), iteration);
-                    if (r.ok) {
-                        return String.format(Locale.ROOT, "%d,2,%.6f,%d", iteration, r.value, r.timeMs);
-                    } else {
-                        return String.format("%d,2,error: %s", iteration, sanitize(r.error));
-                    }
-                })
-                .subscribeOn(Schedulers.boundedElastic())
-                .doFinally(sig -> unpaired2.decrementAndGet());
+     * Запускаем функции параллельно (не больше functionParallelism одновременно), каждая
+     * возвращает свою строку, и возвращаем Flux из результатов (они будут приходить по мере готовности).
+     */
+    private Flux<DataBuffer> processIterationUnordered(int iteration, StreamState state, DataBufferFactory bufferFactory) {
+        // flatMap — результаты выходят в порядке готовности
+        return Flux.range(0, state.size())
+                .flatMap(k -> Mono.fromFuture(() -> {
+                            state.begin(k, 1);
+                            return runFunction(state, k, iteration);
+                        }, false)
+                        .map(r -> formatUnordered(state, bufferFactory, iteration, k + 1, r))
+                        .doFinally(sig -> state.end(k)), state.parallelism);
+    }
+
+    /** Строка unordered-режима для результата одной функции. */
+    private DataBuffer formatUnordered(StreamState state, DataBufferFactory bufferFactory, int iteration,
+                                       int functionNo, FunctionExecutor.ExecutionResult r) {
+        metrics.record(functionNo, state.function(functionNo - 1).language, r);
+        if (r.ok) {
+            return CsvRowEncoder.unorderedRow(bufferFactory, iteration, functionNo, r.value, r.timeMs,
+                    state.settings.isTimingColumns() ? new long[]{r.queueNanos, r.compileNanos, r.execNanos} : null);
+        } else {
+            return CsvRowEncoder.errorRow(bufferFactory, iteration, functionNo, r.error);
+        }
+    }
 
-        // Merge — результаты выходят в порядке готовности
-        return Flux.merge(a, b);
+    private FunctionResult toFunctionResult(StreamState state, int iteration, int functionNo,
+                                            FunctionExecutor.ExecutionResult r) {
+        metrics.record(functionNo, state.function(functionNo - 1).language, r);
+        if (r.ok) {
+            return new FunctionResult(iteration, functionNo, r.value, r.timeMs, null,
+                    r.queueNanos, r.compileNanos, r.execNanos);
+        } else {
+            return new FunctionResult(iteration, functionNo, Double.NaN, -1, r.error);
+        }
     }
 
     /**
-     * Простая эвристика определения языка функции:
+     * Вычислить функцию с индексом k для итерации: из батча с упреждением (batchSize > 1)
+     * или отдельным вызовом.
+     */
+    private CompletableFuture<FunctionExecutor.ExecutionResult> runFunction(StreamState state, int k, int iteration) {
+        if (state.ahead != null) {
+            return state.ahead[k].get(iteration);
+        }
+        return call(state.function(k), iteration);
+    }
+
+    /**
+     * Вызвать функцию на её языке (через ограничитель, если он включён).
+     * Для чистых функций (pure) executor использует общий кэш результатов.
+     */
+    private CompletableFuture<FunctionExecutor.ExecutionResult> call(RegisteredFunction fn, int x) {
+        if (limiter != null) {
+            return limiter.call(() -> run(fn, x), FunctionExecutor.ExecutionResult::rejected, r -> r.rejected);
+        }
+        return run(fn, x);
+    }
+
+    private CompletableFuture<FunctionExecutor.ExecutionResult> run(RegisteredFunction fn, int x) {
+        if (fn.isJs()) {
+            return executor.executeJsAsync(fn.function, x, fn.pure);
+        } else {
+            return executor.executePythonAsync(fn.function, x, fn.pure);
+        }
+    }
+
+    /** Все JS-функции потока одним вызовом движка (через ограничитель, если он включён). */
+    private CompletableFuture<List<FunctionExecutor.ExecutionResult>> runJsFused(StreamState state, int iteration) {
+        List<String> functions = state.texts;
+        if (limiter != null) {
+            return limiter.call(() -> executor.executeJsAllAsync(functions, iteration),
+                    error -> Collections.nCopies(functions.size(), FunctionExecutor.ExecutionResult.rejected(error)),
+                    rs -> rs.stream().anyMatch(r -> r.rejected));
+        }
+        return executor.executeJsAllAsync(functions, iteration);
+    }
+
+    /**
+     * Простая эвристика определения языка функции (для config.json и регистрации без языка):
      * если строка содержит явные JS-конструкции, трактуем как JS, иначе Python.
      */
-    private FunctionExecutor.ExecutionResult detectAndRun(String funcText, int x) {
+    static boolean isJs(String funcText) {
         String t = funcText == null ? "" : funcText.trim();
-        if (t.startsWith("function") || t.contains("return") || t.contains("=>")) {
-            return executor.executeJs(funcText, x);
-        } else {
-            return executor.executePython(funcText, x);
+        return t.startsWith("function") || t.contains("return") || t.contains("=>");
+    }
+
+    /**
+     * Состояние буферов одного потока (одной подписки): сколько результатов каждой функции
+     * начато, но ещё не выведено. Атомики нужны, т.к. функции завершаются в разных потоках,
+     * но каждый экземпляр принадлежит одному стриму — между клиентами конкуренции нет.
+     * Изменения дублируются в общие счётчики узла, если они включены.
+     */
+    private static final class StreamState {
+        private final AtomicInteger[] unpaired;
+        private final LongAdder[] node;
+
+        /** Версия настроек, за которой закреплён поток. */
+        final ConfigJson settings;
+
+        /** Функции этого потока (индекс k — функция номер k + 1) и их тексты для слитного вызова. */
+        final List<RegisteredFunction> functions;
+        final List<String> texts;
+
+        /** Сколько функций итерации считается одновременно. */
+        final int parallelism;
+
+        /** Считать все функции одним слитным JS-вызовом (решается один раз на поток, только ordered). */
+        final boolean fuseJs;
+
+        /** Батчи с упреждением по функциям; null — батчи выключены. */
+        final Lookahead[] ahead;
+
+        StreamState(LongAdder[] node, ConfigJson settings, List<RegisteredFunction> functions,
+                    boolean fuseJs, Lookahead[] ahead) {
+            this.node = node;
+            this.settings = settings;
+            this.functions = functions;
+            this.texts = functions.stream().map(fn -> fn.function).toList();
+            this.parallelism = Math.max(1, settings.getFunctionParallelism());
+            this.fuseJs = fuseJs;
+            this.ahead = ahead;
+            this.unpaired = new AtomicInteger[functions.size()];
+            for (int k = 0; k < unpaired.length; k++) {
+                unpaired[k] = new AtomicInteger();
+            }
+        }
+
+        int size() {
+            return functions.size();
+        }
+
+        RegisteredFunction function(int k) {
+            return functions.get(k);
+        }
+
+        /** Начаты n результатов функции k (n > 1 — чанк bulk-режима). */
+        void begin(int k, int n) {
+            unpaired[k].addAndGet(n);
+            if (node != null) node[k].add(n);
+        }
+
+        /** Начато по результату каждой функции (слитный JS-вызов). */
+        void beginAll() {
+            for (int k = 0; k < unpaired.length; k++) {
+                begin(k, 1);
+            }
+        }
+
+        /**
+         * Результат функции k выведен; возвращает значение счётчика до уменьшения.
+         * Если close() уже списал оставшееся (doFinally отмены срабатывает раньше вложенных),
+         * счётчик равен 0 и общий счётчик узла не трогается — каждый начатый результат
+         * вычитается из него ровно один раз.
+         */
+        int end(int k) {
+            int before = unpaired[k].getAndUpdate(v -> v > 0 ? v - 1 : 0);
+            if (before > 0 && node != null) node[k].decrement();
+            return before;
+        }
+
+        /**
+         * Поток завершён или отменён: то, что осталось "в пути" (итерации, прерванные отменой),
+         * уже не будет выведено — убираем это из общих счётчиков узла.
+         */
+        void close() {
+            if (ahead != null) {
+                for (Lookahead a : ahead) {
+                    a.close();
+                }
+            }
+            for (int k = 0; k < unpaired.length; k++) {
+                int left = unpaired[k].getAndSet(0);
+                if (node != null) node[k].add(-left);
+            }
         }
     }
 
-    /** Очистка сообщения об ошибках, чтобы избежать переносов строк в выходных данных CSV. */
-    private String sanitize(String s) {
-        if (s == null) return "";
-        return s.replaceAll("[\\r\\n]+", " ");
+    /**
+     * Батчи с упреждением для одной функции одного потока: итерации 1..count делятся на
+     * батчи по batchSize, и первая итерация батча запускает вычисление всего батча одним
+     * вызовом executor (FunctionExecutor.execute*BatchAsync) и сразу следующего батча —
+     * к моменту, когда до них дойдёт расписание, значения уже посчитаны.
+     * Время в строках — доля времени батча на один x. Таймаут батча растёт с его размером
+     * (FunctionExecutor.batchTimeoutMs), так что медленная, но укладывающаяся в TIMEOUT_MS
+     * на x функция не получает ошибок таймаута из-за батчинга.
+     */
+    private static final class Lookahead {
+        private final FunctionExecutor executor;
+        private final String funcText;
+        private final boolean js;
+        private final int batchSize;
+        private final int count;
+        private final ConcurrentMap<Integer, CompletableFuture<FunctionExecutor.BatchResult>> batches =
+                new ConcurrentHashMap<>();
+
+        Lookahead(FunctionExecutor executor, RegisteredFunction fn, int batchSize, int count) {
+            this.executor = executor;
+            this.funcText = fn.function;
+            this.js = fn.isJs();
+            this.batchSize = batchSize;
+            this.count = count;
+        }
+
+        CompletableFuture<FunctionExecutor.ExecutionResult> get(int iteration) {
+            int index = (iteration - 1) / batchSize;
+            int first = index * batchSize + 1;
+            CompletableFuture<FunctionExecutor.BatchResult> batch = batch(index);
+            if (iteration == first) {
+                batch(index + 1); // упреждение
+            }
+            if (iteration == Math.min(count, first + batchSize - 1)) {
+                batches.remove(index); // последняя итерация батча — он больше не понадобится
+            }
+            return batch.thenApply(r -> r.get(iteration - first));
+        }
+
+        private CompletableFuture<FunctionExecutor.BatchResult> batch(int index) {
+            int first = index * batchSize + 1;
+            if (first > count) {
+                return null;
+            }
+            return batches.computeIfAbsent(index, i -> {
+                int[] xs = IntStream.rangeClosed(first, Math.min(count, first + batchSize - 1)).toArray();
+                return js ? executor.executeJsBatchAsync(funcText, xs) : executor.executePythonBatchAsync(funcText, xs);
+            });
+        }
+
+        /** Поток завершён или отменён — посчитанные заранее батчи не нужны. */
+        void close() {
+            batches.values().forEach(f -> f.cancel(true));
+            batches.clear();
+        }
+    }
+
+    /** Версия config.json: настройки потоков и функции по умолчанию. Неизменяема. */
+    private static final class ConfigVersion {
+        final long version;
+        final ConfigJson config;
+        final List<RegisteredFunction> functions;
+
+        ConfigVersion(long version, ConfigJson config, List<RegisteredFunction> functions) {
+            this.version = version;
+            this.config = config;
+            this.functions = functions;
+        }
+    }
+
+    /** Результаты всех функций для одного чанка bulk-режима (batches — в порядке функций). */
+    private static final class Chunk {
+        final int[] xs;
+        final List<FunctionExecutor.BatchResult> batches;
+
+        Chunk(int[] xs, List<FunctionExecutor.BatchResult> batches) {
+            this.xs = xs;
+            this.batches = batches;
+        }
     }
 
     /** Вспомогательная структура для результатов функций */
@@ -199,13 +780,25 @@ public class CalculationServiceImp implements CalculationService {
         final double value;
         final long timeMs;
         final String error;
+        // фазы времени в наносекундах (для столбцов timingColumns)
+        final long queueNanos;
+        final long compileNanos;
+        final long execNanos;
 
         FunctionResult(int iteration, int functionNo, double value, long timeMs, String error) {
+            this(iteration, functionNo, value, timeMs, error, 0, 0, 0);
+        }
+
+        FunctionResult(int iteration, int functionNo, double value, long timeMs, String error,
+                       long queueNanos, long compileNanos, long execNanos) {
             this.iteration = iteration;
             this.functionNo = functionNo;
             this.value = value;
             this.timeMs = timeMs;
             this.error = error;
+            this.queueNanos = queueNanos;
+            this.compileNanos = compileNanos;
+            this.execNanos = execNanos;
         }
     }
 }
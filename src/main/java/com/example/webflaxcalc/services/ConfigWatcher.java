@@ -0,0 +1,129 @@
+package com.example.webflaxcalc.services;
+
+import com.example.webflaxcalc.configs.ConfigJson;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * ConfigWatcher — следит за внешним config.json (webflaxcalc.config-path) через WatchService
+ * и применяет изменения без перезапуска ({@link CalculationService#reload}).
+ *
+ * Работает в отдельном daemon-потоке, поэтому компиляция новых функций (и запуск python-процесса
+ * для их загрузки) не задерживает потоки запросов. Следит за каталогом файла: редакторы
+ * часто сохраняют через запись во временный файл и rename, это приходит как ENTRY_CREATE.
+ * Серия событий одного сохранения склеивается (DEBOUNCE_MS), файл с прежним содержимым
+ * не перезагружается. Невалидный файл или функция, которая не компилируется, — предупреждение
+ * в лог, действует прежняя версия.
+ *
+ * Без webflaxcalc.config-path (config.json из classpath) ничего не делает.
+ */
+@Component
+public class ConfigWatcher {
+
+    private static final Logger log = LoggerFactory.getLogger(ConfigWatcher.class);
+
+    /** Сколько ждать тишины после события, прежде чем читать файл. */
+    static final long DEBOUNCE_MS = 200;
+
+    private final CalculationService service;
+    private final ObjectMapper mapper;
+    private final Path file;
+
+    private volatile WatchService watchService;
+    private byte[] lastContent;
+
+    public ConfigWatcher(CalculationService service, ObjectMapper mapper,
+                         @Value("${webflaxcalc.config-path:}") String configPath) {
+        this.service = service;
+        this.mapper = mapper;
+        this.file = configPath.isBlank() ? null : Path.of(configPath).toAbsolutePath();
+    }
+
+    @PostConstruct
+    public void start() throws IOException {
+        if (file == null) {
+            return;
+        }
+        lastContent = Files.readAllBytes(file);
+        watchService = file.getFileSystem().newWatchService();
+        file.getParent().register(watchService,
+                StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY);
+        Thread thread = new Thread(this::watch, "config-watcher");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    @PreDestroy
+    public void stop() throws IOException {
+        WatchService ws = watchService;
+        if (ws != null) {
+            ws.close(); // take() в потоке наблюдения бросит ClosedWatchServiceException
+        }
+    }
+
+    private void watch() {
+        try {
+            while (true) {
+                WatchKey key = watchService.take();
+                boolean changed = touchesFile(key);
+                // дождаться конца серии событий (запись по частям, rename)
+                WatchKey more;
+                while ((more = watchService.poll(DEBOUNCE_MS, TimeUnit.MILLISECONDS)) != null) {
+                    changed |= touchesFile(more);
+                }
+                if (changed) {
+                    reload();
+                }
+            }
+        } catch (ClosedWatchServiceException | InterruptedException e) {
+            // остановка приложения
+        }
+    }
+
+    /** Есть ли среди событий ключа события нашего файла; ключ снова готов к событиям. */
+    private boolean touchesFile(WatchKey key) {
+        boolean touches = false;
+        for (WatchEvent<?> event : key.pollEvents()) {
+            if (file.getFileName().equals(event.context())) {
+                touches = true;
+            }
+        }
+        key.reset();
+        return touches;
+    }
+
+    /** Прочитать файл и применить его; содержимое без изменений пропускается, ошибка оставляет текущую версию. */
+    void reload() {
+        try {
+            byte[] content = Files.readAllBytes(file);
+            if (Arrays.equals(content, lastContent)) {
+                return;
+            }
+            ConfigJson next = mapper.readValue(content, ConfigJson.class);
+            long version = service.reload(next);
+            lastContent = content;
+            log.info("config.json reloaded from {}: version {}", file, version);
+        } catch (IOException | IllegalArgumentException e) {
+            log.warn("config.json from {} not applied, keeping the current version: {}", file, e.getMessage());
+        } catch (RuntimeException e) {
+            // любая другая ошибка разбора или подготовки не должна останавливать поток наблюдателя
+            log.error("config.json from {} not applied, keeping the current version", file, e);
+        }
+    }
+}
@@ -0,0 +1,195 @@
+package com.example.webflaxcalc.services;
+
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferFactory;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+
+/**
+ * CsvRowEncoder — пишет CSV-строки сервиса прямо в DataBuffer, уже в SSE-кадре
+ * ("data:" + строка + "\n\n"), без Formatter, regex и промежуточных String.
+ *
+ * Числа выводятся так же, как String.format(Locale.ROOT, ...):
+ *  - int / long — "%d";
+ *  - double — "%.6f" (ровно 6 знаков после точки, округление HALF_UP).
+ * Быстрый путь для double: масштабирование на 10^6 и округление в long. Значения, для
+ * которых быстрый путь может разойтись с Formatter (|v| >= 10^6, почти-ничья при округлении,
+ * NaN/Infinity), выводятся через String.format — это редкий путь, он аллоцирует.
+ */
+public final class CsvRowEncoder {
+
+    /** Начальный размер буфера строки: обычная ordered-строка помещается без расширения. */
+    static final int ROW_CAPACITY = 96;
+
+    private static final byte[] SSE_PREFIX = "data:".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] SSE_SUFFIX = "\n\n".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] ERROR = "error: ".getBytes(StandardCharsets.US_ASCII);
+
+    private static final long[] POW10 = {
+            1L, 10L, 100L, 1_000L, 10_000L, 100_000L, 1_000_000L, 10_000_000L, 100_000_000L,
+            1_000_000_000L, 10_000_000_000L, 100_000_000_000L, 1_000_000_000_000L,
+            10_000_000_000_000L, 100_000_000_000_000L, 1_000_000_000_000_000L,
+            10_000_000_000_000_000L, 100_000_000_000_000_000L, 1_000_000_000_000_000_000L
+    };
+
+    /** Граница быстрого пути для double: ниже неё ulp(v) < 10^-9, а v * 10^6 точно представимо в long. */
+    private static final double FAST_LIMIT = 1e6;
+
+    /** Насколько (в единицах 10^-6) дробная часть должна отстоять от 0.5, чтобы округлять быстрым путём. */
+    private static final double TIE_MARGIN = 1e-3;
+
+    private CsvRowEncoder() {
+    }
+
+    /**
+     * Успешная строка ordered-режима для N функций: i,res1,time1,buf1,...,resN,timeN,bufN
+     * и, если phases не null, столбцы фаз ...,queue1,compile1,exec1,...,queueN,compileN,execN.
+     *
+     * @param phases 3N значений в наносекундах или null — без дополнительных столбцов
+     */
+    public static DataBuffer orderedRow(DataBufferFactory factory, int iteration,
+                                        double[] values, long[] times, int[] bufs, long[] phases) {
+        int groups = Math.max(1, (values.length + 1) / 2);
+        DataBuffer buf = factory.allocateBuffer((phases == null ? ROW_CAPACITY : ROW_CAPACITY * 2) * groups);
+        buf.write(SSE_PREFIX);
+        writeLong(buf, iteration);
+        for (int k = 0; k < values.length; k++) {
+            buf.write((byte) ',');
+            writeFixed6(buf, values[k]);
+            buf.write((byte) ',');
+            writeLong(buf, times[k]);
+            buf.write((byte) ',');
+            writeLong(buf, bufs[k]);
+        }
+        writePhases(buf, phases);
+        buf.write(SSE_SUFFIX);
+        return buf;
+    }
+
+    /**
+     * Успешная строка unordered-режима: i,fnNumber,result,time и, если phases не null,
+     * столбцы фаз времени ...,queue,compile,exec (наносекунды).
+     *
+     * @param phases {queue, compile, exec} или null — без дополнительных столбцов
+     */
+    public static DataBuffer unorderedRow(DataBufferFactory factory, int iteration, int functionNo,
+                                          double value, long timeMs, long[] phases) {
+        DataBuffer buf = factory.allocateBuffer(ROW_CAPACITY);
+        buf.write(SSE_PREFIX);
+        writeLong(buf, iteration);
+        buf.write((byte) ',');
+        writeLong(buf, functionNo);
+        buf.write((byte) ',');
+        writeFixed6(buf, value);
+        buf.write((byte) ',');
+        writeLong(buf, timeMs);
+        writePhases(buf, phases);
+        buf.write(SSE_SUFFIX);
+        return buf;
+    }
+
+    /**
+     * Строка ошибки: i,fnNumber,error: msg. Переводы строк в сообщении заменяются
+     * одним пробелом, чтобы строка осталась одной строкой CSV.
+     */
+    public static DataBuffer errorRow(DataBufferFactory factory, int iteration, int functionNo, String error) {
+        DataBuffer buf = factory.allocateBuffer(ROW_CAPACITY);
+        buf.write(SSE_PREFIX);
+        writeLong(buf, iteration);
+        buf.write((byte) ',');
+        writeLong(buf, functionNo);
+        buf.write((byte) ',');
+        buf.write(ERROR);
+        buf.write(sanitize(error), StandardCharsets.UTF_8);
+        buf.write(SSE_SUFFIX);
+        return buf;
+    }
+
+    /** Дописать столбцы ",p0,p1,..." (ничего, если phases == null). */
+    private static void writePhases(DataBuffer buf, long[] phases) {
+        if (phases == null) {
+            return;
+        }
+        for (long phase : phases) {
+            buf.write((byte) ',');
+            writeLong(buf, phase);
+        }
+    }
+
+    /** Записать целое число в десятичном виде ("%d"). */
+    static void writeLong(DataBuffer buf, long v) {
+        if (v == Long.MIN_VALUE) {
+            buf.write(Long.toString(v), StandardCharsets.US_ASCII);
+            return;
+        }
+        if (v < 0) {
+            buf.write((byte) '-');
+            v = -v;
+        }
+        int digits = 1;
+        while (digits < POW10.length && v >= POW10[digits]) {
+            digits++;
+        }
+        writeDigits(buf, v, digits);
+    }
+
+    /** Записать double с ровно шестью знаками после точки ("%.6f"). */
+    static void writeFixed6(DataBuffer buf, double v) {
+        double abs = Math.abs(v);
+        if (!(abs < FAST_LIMIT)) {
+            // NaN, бесконечности и большие значения — как есть у Formatter
+            buf.write(String.format(Locale.ROOT, "%.6f", v), StandardCharsets.US_ASCII);
+            return;
+        }
+        double scaled = abs * 1e6;
+        double frac = scaled - Math.floor(scaled);
+        if (Math.abs(frac - 0.5) < TIE_MARGIN) {
+            // почти-ничья: Formatter округляет десятичное представление double, повторим его дословно
+            buf.write(String.format(Locale.ROOT, "%.6f", v), StandardCharsets.US_ASCII);
+            return;
+        }
+        long units = (long) (frac > 0.5 ? Math.ceil(scaled) : Math.floor(scaled));
+        if (Double.doubleToRawLongBits(v) < 0) {
+            buf.write((byte) '-'); // Formatter сохраняет знак и у -0.0, и у округлённых к нулю отрицательных
+        }
+        writeLong(buf, units / 1_000_000L);
+        buf.write((byte) '.');
+        writeDigits(buf, units % 1_000_000L, 6);
+    }
+
+    /** Записать неотрицательное v ровно в digits цифр (с ведущими нулями). */
+    private static void writeDigits(DataBuffer buf, long v, int digits) {
+        for (int i = digits - 1; i >= 0; i--) {
+            long p = POW10[i];
+            int d = (int) (v / p);
+            buf.write((byte) ('0' + d));
+            v -= d * p;
+        }
+    }
+
+    /** Заменить каждую последовательность \r / \n одним пробелом (без regex). */
+    static String sanitize(String s) {
+        if (s == null) {
+            return "";
+        }
+        if (s.indexOf('\n') < 0 && s.indexOf('\r') < 0) {
+            return s;
+        }
+        StringBuilder sb = new StringBuilder(s.length());
+        boolean inBreak = false;
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c == '\n' || c == '\r') {
+                if (!inBreak) {
+                    sb.append(' ');
+                    inBreak = true;
+                }
+            } else {
+                sb.append(c);
+                inBreak = false;
+            }
+        }
+        return sb.toString();
+    }
+}
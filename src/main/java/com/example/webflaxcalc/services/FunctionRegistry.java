@@ -0,0 +1,131 @@
+package com.example.webflaxcalc.services;
+
+import com.example.webflaxcalc.executions.FunctionExecutor;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.Locale;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * FunctionRegistry — функции, зарегистрированные через POST /api/functions.
+ *
+ * При регистрации функция один раз готовится исполнителем (FunctionExecutor.prepare):
+ * компилируется в Java-код, в Nashorn CompiledScript или загружается в python-процесс.
+ * Невалидная функция не регистрируется — ошибка возвращается сразу, а не строками потока.
+ * Дальше потоки ссылаются на функцию по id (/api/calculate?f1=<id>&f2=<id>), и вызовы
+ * берут готовый скрипт из кэшей исполнителя без разбора текста.
+ *
+ * id — префикс SHA-256 от языка, признака pure и текста: повторная регистрация той же функции
+ * возвращает тот же id без повторной компиляции. Число функций ограничено maxFunctions.
+ *
+ * POST /api/functions компилирует и выполняет присланный код без аутентификации, поэтому
+ * открыт, только если registrationEnabled (functionRegistration в config.json, по умолчанию false).
+ * Сам реестр флаг не проверяет — его проверяет контроллер.
+ */
+public class FunctionRegistry {
+
+    private final FunctionExecutor executor;
+    private final int maxFunctions;
+    private final boolean registrationEnabled;
+    private final ConcurrentMap<String, RegisteredFunction> functions = new ConcurrentHashMap<>();
+
+    public FunctionRegistry(FunctionExecutor executor, int maxFunctions, boolean registrationEnabled) {
+        this.executor = executor;
+        this.maxFunctions = maxFunctions;
+        this.registrationEnabled = registrationEnabled;
+    }
+
+    /** Открыт ли POST /api/functions (functionRegistration в config.json). */
+    public boolean isRegistrationEnabled() {
+        return registrationEnabled;
+    }
+
+    /**
+     * Зарегистрировать функцию. Блокирует поток на время подготовки (для Python — возможно,
+     * запуск процесса), поэтому вызывается не из event loop.
+     *
+     * @param function текст функции
+     * @param language "js" / "javascript", "python" / "py"; null или "auto" — эвристика по тексту
+     * @param pure функция чистая — её результаты можно кэшировать
+     * @return зарегистрированная функция (та же, если она уже была зарегистрирована)
+     * @throws IllegalArgumentException неизвестный язык или функция не компилируется / не загружается
+     * @throws IllegalStateException реестр заполнен
+     */
+    public RegisteredFunction register(String function, String language, boolean pure) {
+        if (function == null || function.isBlank()) {
+            throw new IllegalArgumentException("function is empty");
+        }
+        String lang = normalizeLanguage(language, function);
+        String id = id(lang, pure, function);
+        RegisteredFunction known = functions.get(id);
+        if (known != null) {
+            return known;
+        }
+        checkCapacity();
+
+        FunctionExecutor.ExecutionResult prepared = executor.prepare(function, RegisteredFunction.JS.equals(lang));
+        if (!prepared.ok) {
+            throw new IllegalArgumentException(prepared.error);
+        }
+        // подготовка долгая и идёт без блокировки; проверка размера и вставка — под одной,
+        // иначе параллельные регистрации вместе проходят проверку и переполняют реестр
+        synchronized (functions) {
+            known = functions.get(id);
+            if (known != null) {
+                return known;
+            }
+            checkCapacity();
+            RegisteredFunction registered = new RegisteredFunction(id, lang, function, pure);
+            functions.put(id, registered);
+            return registered;
+        }
+    }
+
+    private void checkCapacity() {
+        if (functions.size() >= maxFunctions) {
+            throw new IllegalStateException("function registry is full (" + maxFunctions + " functions)");
+        }
+    }
+
+    /** Функция по id или null, если такой нет. */
+    public RegisteredFunction get(String id) {
+        return id == null ? null : functions.get(id);
+    }
+
+    /** Число зарегистрированных функций. */
+    public int size() {
+        return functions.size();
+    }
+
+    static String normalizeLanguage(String language, String function) {
+        String lang = language == null ? "auto" : language.trim().toLowerCase(Locale.ROOT);
+        switch (lang) {
+            case "auto":
+            case "":
+                return CalculationServiceImp.isJs(function) ? RegisteredFunction.JS : RegisteredFunction.PYTHON;
+            case "js":
+            case "javascript":
+                return RegisteredFunction.JS;
+            case "python":
+            case "py":
+                return RegisteredFunction.PYTHON;
+            default:
+                throw new IllegalArgumentException("unknown language: " + language);
+        }
+    }
+
+    private static String id(String language, boolean pure, String function) {
+        try {
+            MessageDigest sha = MessageDigest.getInstance("SHA-256");
+            sha.update((language + (pure ? ":pure:" : ":")).getBytes(StandardCharsets.UTF_8));
+            byte[] digest = sha.digest(function.getBytes(StandardCharsets.UTF_8));
+            return HexFormat.of().formatHex(digest, 0, 8);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e); // SHA-256 есть в любой JVM
+        }
+    }
+}
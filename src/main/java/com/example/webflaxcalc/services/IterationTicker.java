@@ -0,0 +1,162 @@
+package com.example.webflaxcalc.services;
+
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.FluxSink;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * IterationTicker — выдаёт номера итераций 1..count по фиксированной сетке времени:
+ * итерация k планируется на момент start + k × interval, а не "interval после предыдущей",
+ * поэтому время обработки и задержки таймера не накапливаются (нет дрейфа).
+ *
+ * На поток — один Scheduler.Worker (один таймер), все действия выполняются на нём
+ * последовательно, поэтому состояние тикера не требует синхронизации.
+ *
+ * Тик может быть пропущен, если подписчик в момент срабатывания не запросил элементы
+ * (backpressure: например, ordered-режим уже держит maxInFlight итераций). Что делать
+ * с пропущенными тиками, когда спрос появится, определяет {@link CatchUp}.
+ */
+public final class IterationTicker {
+
+    /** Политика для тиков, пропущенных из-за отсутствия спроса или задержки таймера. */
+    public enum CatchUp {
+        /** Выдать все просроченные итерации сразу, подряд — наверстать отставание. */
+        BURST,
+        /** Пропущенные моменты сетки не используются: следующая итерация — в ближайший будущий момент сетки. */
+        SKIP,
+        /** Все пропущенные тики сливаются в один: одна итерация сразу, следующая — по сетке. */
+        COALESCE;
+
+        /**
+         * Разбор значения из конфигурации ("burst" / "skip" / "coalesce"); null — BURST.
+         *
+         * @throws IllegalArgumentException неизвестное значение
+         */
+        public static CatchUp parse(String value) {
+            if (value == null) {
+                return BURST;
+            }
+            for (CatchUp c : values()) {
+                if (c.name().equalsIgnoreCase(value.trim())) {
+                    return c;
+                }
+            }
+            throw new IllegalArgumentException("unknown catchUp: " + value + " (expected burst, skip or coalesce)");
+        }
+    }
+
+    private IterationTicker() {
+    }
+
+    /**
+     * Поток номеров итераций 1..count с периодом intervalMs.
+     *
+     * @param count число итераций
+     * @param intervalMs период сетки в миллисекундах
+     * @param catchUp политика для пропущенных тиков
+     */
+    public static Flux<Integer> ticks(int count, long intervalMs, CatchUp catchUp) {
+        return Flux.create(sink -> new Ticker(sink, count, intervalMs, catchUp, Schedulers.parallel()).start());
+    }
+
+    /** Состояние одной подписки. Все поля, кроме sink, меняются только на worker. */
+    private static final class Ticker {
+        private final FluxSink<Integer> sink;
+        private final int count;
+        private final long intervalNanos;
+        private final CatchUp catchUp;
+        private final Scheduler scheduler;
+        private final Scheduler.Worker worker;
+
+        private long startNanos;
+        /** Следующая итерация. */
+        private int next = 1;
+        /** Номер момента сетки, на который запланирована следующая итерация. */
+        private long slot = 1;
+        /** Запланированное срабатывание таймера (null — не запланировано). */
+        private Disposable timer;
+        /**
+         * Тикер завершён или отменён: запросы подписчика больше ничего не планируют.
+         * Меняется под монитором this вместе с освобождением worker — иначе запрос,
+         * пришедший после последнего тика (flatMap добирает спрос, когда завершается
+         * вложенный поток), попал бы на освобождённый worker.
+         */
+        private boolean done;
+
+        Ticker(FluxSink<Integer> sink, int count, long intervalMs, CatchUp catchUp, Scheduler scheduler) {
+            this.sink = sink;
+            this.count = count;
+            this.intervalNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(1, intervalMs));
+            this.catchUp = catchUp;
+            this.scheduler = scheduler;
+            this.worker = scheduler.createWorker();
+        }
+
+        void start() {
+            if (count <= 0) {
+                sink.complete();
+                worker.dispose();
+                return;
+            }
+            sink.onDispose(this::terminate);
+            worker.schedule(() -> {
+                startNanos = scheduler.now(TimeUnit.NANOSECONDS);
+                // спрос появился (или вырос) — проверить, нет ли уже просроченных тиков
+                sink.onRequest(n -> schedule(0));
+                fire();
+            });
+        }
+
+        /** Завершение или отмена подписки: сначала запросы становятся no-op, затем освобождается worker. */
+        private synchronized void terminate() {
+            done = true;
+            worker.dispose();
+        }
+
+        /** Выдать все итерации, срок которых наступил и на которые есть спрос; затем взвести таймер. */
+        private void fire() {
+            while (!sink.isCancelled() && next <= count) {
+                long now = scheduler.now(TimeUnit.NANOSECONDS);
+                long deadline = startNanos + slot * intervalNanos;
+                if (now < deadline) {
+                    schedule(deadline - now);
+                    return;
+                }
+                if (sink.requestedFromDownstream() == 0) {
+                    return; // тик пропущен; onRequest вызовет fire снова
+                }
+                // сколько ещё моментов сетки прошло после deadline
+                long missed = (now - deadline) / intervalNanos;
+                if (catchUp == CatchUp.SKIP && missed > 0) {
+                    slot += missed + 1;
+                    continue;
+                }
+                sink.next(next++);
+                slot += catchUp == CatchUp.COALESCE ? missed + 1 : 1;
+            }
+            if (next > count) {
+                terminate();
+                sink.complete();
+            }
+        }
+
+        /** Запустить fire на worker: сразу (delayNanos = 0, новый спрос) или по таймеру. */
+        private synchronized void schedule(long delayNanos) {
+            if (done) {
+                return;
+            }
+            if (delayNanos == 0) {
+                worker.schedule(this::fire);
+                return;
+            }
+            if (timer != null) {
+                timer.dispose();
+            }
+            timer = worker.schedule(this::fire, delayNanos, TimeUnit.NANOSECONDS);
+        }
+    }
+}
@@ -0,0 +1,41 @@
+package com.example.webflaxcalc.services;
+
+import com.example.webflaxcalc.configs.FunctionConfig;
+
+/**
+ * Функция, которую вычисляет поток: текст, язык и признак чистоты.
+ * Зарегистрированные через {@link FunctionRegistry} функции уже скомпилированы или загружены
+ * в python-процесс и имеют id; функции из config.json id не имеют (id = null) и
+ * готовятся при первом вызове, как и раньше.
+ */
+public class RegisteredFunction {
+
+    public static final String JS = "js";
+    public static final String PYTHON = "python";
+
+    public final String id;
+    public final String language;   // "js" или "python"
+    public final String function;
+    public final boolean pure;
+
+    public RegisteredFunction(String id, String language, String function, boolean pure) {
+        this.id = id;
+        this.language = language;
+        this.function = function;
+        this.pure = pure;
+    }
+
+    /**
+     * Функция из config.json: язык — из language, без него — по эвристике; id нет.
+     *
+     * @throws IllegalArgumentException неизвестный язык
+     */
+    public static RegisteredFunction fromConfig(FunctionConfig config) {
+        return new RegisteredFunction(null, FunctionRegistry.normalizeLanguage(config.getLanguage(), config.getFunction()),
+                config.getFunction(), config.isPure());
+    }
+
+    public boolean isJs() {
+        return JS.equals(language);
+    }
+}
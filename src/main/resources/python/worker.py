@@ -0,0 +1,98 @@
+# Резидентный Python-воркер для FunctionExecutor.
+#
+# Протокол (stdin/stdout, бинарный): каждый кадр — 4 байта длины (big-endian)
+# и UTF-8 payload. Первый символ payload — код операции:
+#   D<id>\n<source>  — загрузить функцию под номером id
+#   C<id>\n<x>       — вызвать функцию id с аргументом x
+#   B<id>\n<x1> <x2> ... — вызвать функцию id для каждого x; ответ O + результаты,
+#                      разделённые \0, каждый в формате O<result> / E<message>
+#   P                — health check
+# Ответ: O<result> при успехе или E<message> при ошибке.
+#
+# print() внутри пользовательских функций уходит в stderr, чтобы не ломать кадры.
+import struct
+import sys
+
+_in = sys.stdin.buffer
+_out = sys.stdout.buffer
+sys.stdout = sys.stderr
+
+_functions = {}
+
+
+def _read_exactly(n):
+    data = b''
+    while len(data) < n:
+        chunk = _in.read(n - len(data))
+        if not chunk:
+            return None
+        data += chunk
+    return data
+
+
+def _read_frame():
+    header = _read_exactly(4)
+    if header is None:
+        return None
+    (length,) = struct.unpack('>i', header)
+    payload = _read_exactly(length)
+    return None if payload is None else payload.decode('utf-8')
+
+
+def _write_frame(text):
+    data = text.encode('utf-8')
+    _out.write(struct.pack('>i', len(data)))
+    _out.write(data)
+    _out.flush()
+
+
+def _define(source):
+    # Те же два формата, что и раньше: "def f(x): ..." или выражение вида "lambda x: ..."
+    # Пространство имён пустое, как у прежнего python -c: модули функция импортирует сама
+    ns = {}
+    if source.strip().startswith('def '):
+        exec(source, ns)
+    else:
+        exec('f = ' + source, ns)
+    return ns['f']
+
+
+def _error(e):
+    return 'E%s: %s' % (type(e).__name__, e)
+
+
+def _call_each(fn, xs):
+    results = []
+    for x in xs:
+        try:
+            results.append('O' + str(fn(int(x))))
+        except Exception as e:  # KeyboardInterrupt/SystemExit прерывают весь батч, как и одиночный вызов
+            results.append(_error(e))
+    return results
+
+
+def main():
+    while True:
+        frame = _read_frame()
+        if frame is None:
+            return  # JVM закрыла stdin — завершаемся
+        op = frame[:1]
+        if op == 'P':
+            _write_frame('O')
+            continue
+        head, _, body = frame[1:].partition('\n')
+        try:
+            if op == 'D':
+                _functions[head] = _define(body)
+                _write_frame('O')
+            elif op == 'C':
+                _write_frame('O' + str(_functions[head](int(body))))
+            elif op == 'B':
+                _write_frame('O' + '\0'.join(_call_each(_functions[head], body.split())))
+            else:
+                _write_frame('Eunknown operation: ' + op)
+        except BaseException as e:  # ошибки пользовательского кода возвращаем как есть
+            _write_frame(_error(e))
+
+
+main()
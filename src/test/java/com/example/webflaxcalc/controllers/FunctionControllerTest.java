@@ -0,0 +1,54 @@
+package com.example.webflaxcalc.controllers;
+
+import com.example.webflaxcalc.configs.ConfigJson;
+import com.example.webflaxcalc.services.CalculationServiceImp;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.server.ResponseStatusException;
+import reactor.test.StepVerifier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Unit тесты для FunctionController
+ */
+class FunctionControllerTest {
+
+    private CalculationServiceImp service;
+
+    @AfterEach
+    void tearDown() {
+        if (service != null) {
+            service.destroy();
+        }
+    }
+
+    @Test
+    void testRegistrationIsDisabledByDefault() {
+        service = new CalculationServiceImp(new ConfigJson());
+        StepVerifier.create(new FunctionController(service).register(request("function(x) { return x * 2; }")))
+                .expectErrorMatches(e -> e instanceof ResponseStatusException
+                        && ((ResponseStatusException) e).getStatusCode() == HttpStatus.FORBIDDEN)
+                .verify();
+        assertEquals(0, service.functions().size());
+    }
+
+    @Test
+    void testRegistrationWhenEnabled() {
+        ConfigJson config = new ConfigJson();
+        config.setFunctionRegistration(true);
+        service = new CalculationServiceImp(config);
+        StepVerifier.create(new FunctionController(service).register(request("function(x) { return x * 2; }")))
+                .expectNextMatches(f -> f.id != null)
+                .verifyComplete();
+        assertEquals(1, service.functions().size());
+    }
+
+    private static FunctionRequest request(String function) {
+        FunctionRequest request = new FunctionRequest();
+        request.setFunction(function);
+        request.setLanguage("js");
+        return request;
+    }
+}
@@ -0,0 +1,65 @@
+package com.example.webflaxcalc.executions;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit тесты для Bulkhead
+ */
+class BulkheadTest {
+
+    @Test
+    void testPlatformRejectsWhenQueueIsFull() throws InterruptedException {
+        Bulkhead bulkhead = Bulkhead.platform("test", 1, 1);
+        try {
+            assertRejectsOverCapacity(bulkhead);
+        } finally {
+            bulkhead.shutdownNow();
+        }
+    }
+
+    @Test
+    void testVirtualRejectsWhenQueueIsFull() throws InterruptedException {
+        // семафоры bulkhead'а работают поверх любого executor'а, не только виртуальных потоков
+        ExecutorService executor = Executors.newCachedThreadPool();
+        try {
+            assertRejectsOverCapacity(Bulkhead.virtual("test", executor, 1, 1));
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private void assertRejectsOverCapacity(Bulkhead bulkhead) throws InterruptedException {
+        CountDownLatch running = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch done = new CountDownLatch(2);
+        Runnable blocking = () -> {
+            running.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            done.countDown();
+        };
+
+        bulkhead.execute(blocking);
+        assertTrue(running.await(5, TimeUnit.SECONDS));
+        bulkhead.execute(done::countDown); // ждёт в очереди
+        assertThrows(RejectedExecutionException.class, () -> bulkhead.execute(done::countDown));
+
+        assertEquals(1, bulkhead.activeCount());
+        assertEquals(1, bulkhead.queuedCount());
+        assertEquals(1, bulkhead.rejectedCount());
+
+        release.countDown();
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+    }
+}
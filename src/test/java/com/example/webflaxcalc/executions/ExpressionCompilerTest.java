@@ -0,0 +1,73 @@
+package com.example.webflaxcalc.executions;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.function.DoubleUnaryOperator;
+
+import static com.example.webflaxcalc.executions.ExpressionCompiler.Dialect.JS;
+import static com.example.webflaxcalc.executions.ExpressionCompiler.Dialect.PYTHON;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit тесты для ExpressionCompiler
+ */
+class ExpressionCompilerTest {
+
+    @Test
+    void testJsFunctions() {
+        assertEquals(49.0, ExpressionCompiler.compile("function(x) { return x * x; }", JS).applyAsDouble(7));
+        assertEquals(17.0, ExpressionCompiler.compile("function(x) { return x + 10; }", JS).applyAsDouble(7));
+        assertEquals(3.0, ExpressionCompiler.compile("function f(x) { return Math.sqrt(x) }", JS).applyAsDouble(9));
+        assertEquals(12.0, ExpressionCompiler.compile("function(x) { return Math.max(x, 2) * 2; }", JS).applyAsDouble(6));
+        assertEquals(-1.0, ExpressionCompiler.compile("function(x) { return -x % 3; }", JS).applyAsDouble(7));
+    }
+
+    @Test
+    void testPythonSemantics() {
+        DoubleUnaryOperator f = ExpressionCompiler.compile("lambda x: -x ** 2 + x // 2 - x % 3", PYTHON);
+        // -(7**2) + 3 - 1
+        assertEquals(-47.0, f.applyAsDouble(7));
+        assertEquals(2.0, ExpressionCompiler.compile("lambda x: -x % 3", PYTHON).applyAsDouble(7));
+        assertEquals(1.0, ExpressionCompiler.compile("def f(x):\n    import math\n    return math.sin(x) ** 2 + math.cos(x) ** 2", PYTHON)
+                .applyAsDouble(3), 1e-12);
+
+        // int в Python не бывает -0, а float бывает
+        assertTrue(1 / ExpressionCompiler.compile("lambda x: x * -3", PYTHON).applyAsDouble(0) > 0, "+0.0");
+        assertTrue(1 / ExpressionCompiler.compile("lambda x: x * -0.5", PYTHON).applyAsDouble(0) < 0, "-0.0");
+
+        DoubleUnaryOperator div = ExpressionCompiler.compile("lambda x: 1 / (x - 3)", PYTHON);
+        assertThrows(ArithmeticException.class, () -> div.applyAsDouble(3));
+    }
+
+    @Test
+    void testUnsupportedFallsBack() {
+        assertNull(ExpressionCompiler.compile("function(x) { var y = x; return y; }", JS));
+        assertNull(ExpressionCompiler.compile("function(x) { return x ** 2; }", JS));
+        assertNull(ExpressionCompiler.compile("lambda x: x if x > 0 else 0", PYTHON));
+        assertNull(ExpressionCompiler.compile("def g(x): return x", PYTHON));
+        assertNull(ExpressionCompiler.compile("x + 1", PYTHON));
+        // то, что отвергает интерпретатор: стрелки вне ES5 у Nashorn, math без import в Python
+        assertNull(ExpressionCompiler.compile("x => x * 2", JS));
+        assertNull(ExpressionCompiler.compile("(x) => { return x; }", JS));
+        assertNull(ExpressionCompiler.compile("lambda x: math.sqrt(x)", PYTHON));
+    }
+
+    @Test
+    void testNewlinesAndLeadingZeros() {
+        // переносы, которые интерпретатор понимает иначе или не принимает
+        assertNull(ExpressionCompiler.compile("lambda x: x\n+ 100", PYTHON));
+        assertNull(ExpressionCompiler.compile("def f(x):\nreturn x", PYTHON));
+        assertNull(ExpressionCompiler.compile("def f(x):\n    import math\n  return math.sqrt(x)", PYTHON));
+        assertNull(ExpressionCompiler.compile("function(x) { return\n x * 2; }", JS));
+        // 010 — ошибка в Python и восьмеричное 8 в JS
+        assertNull(ExpressionCompiler.compile("lambda x: x + 010", PYTHON));
+        assertNull(ExpressionCompiler.compile("function(x) { return x + 010; }", JS));
+
+        // допустимые формы
+        assertEquals(3.0, ExpressionCompiler.compile("def f(x):\r\n    return x + 1\r\n", PYTHON).applyAsDouble(2));
+        assertEquals(2.0, ExpressionCompiler.compile("def f(x):\n\timport math\n\treturn math.sqrt(x)", PYTHON)
+                .applyAsDouble(4));
+        assertEquals(4.0, ExpressionCompiler.compile("function(x) {\n  return x * 2;\n}\n", JS).applyAsDouble(2));
+        assertEquals(0.5, ExpressionCompiler.compile("lambda x: x * 0.25", PYTHON).applyAsDouble(2));
+    }
+}
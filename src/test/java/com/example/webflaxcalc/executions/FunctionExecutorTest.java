@@ -0,0 +1,290 @@
+package com.example.webflaxcalc.executions;
+
+import com.example.webflaxcalc.configs.ExecutorConfig;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit тесты для FunctionExecutor
+ */
+class FunctionExecutorTest {
+
+    private FunctionExecutor executor;
+
+    @AfterEach
+    void tearDown() {
+        if (executor != null) {
+            executor.destroy();
+        }
+    }
+
+    /** Исполнитель без нативной компиляции — функции идут в движок и python-процессы. */
+    private static ExecutorConfig interpreted() {
+        ExecutorConfig settings = new ExecutorConfig();
+        settings.setNativeExpressions(false);
+        settings.setResultCacheSize(0);
+        return settings;
+    }
+
+    @Test
+    void testFunctionBulkheadsAreBounded() {
+        ExecutorConfig settings = interpreted();
+        settings.setBulkheads("function");
+        settings.setMaxFunctionBulkheads(2);
+        executor = new FunctionExecutor(settings);
+
+        for (int k = 0; k < 5; k++) {
+            FunctionExecutor.ExecutionResult r = executor.executeJs("function(x) { return x + " + k + "; }", 1);
+            assertTrue(r.ok, r.error);
+            assertEquals(1.0 + k, r.value);
+        }
+        // два bulkhead'а языков и не больше двух bulkhead'ов функций
+        assertEquals(4, executor.bulkheads().size());
+    }
+
+    @Test
+    void testUnknownBulkheadsModeIsRejected() {
+        ExecutorConfig settings = interpreted();
+        settings.setBulkheads("functon");
+        assertThrows(IllegalArgumentException.class, () -> new FunctionExecutor(settings));
+
+        settings.setBulkheads(" Function ");
+        executor = new FunctionExecutor(settings);
+        assertTrue(executor.executeJs("function(x) { return x; }", 1).ok);
+        assertEquals(3, executor.bulkheads().size());
+    }
+
+    @Test
+    void testPrepareDoesNotCacheFailures() {
+        executor = new FunctionExecutor(new ExecutorConfig());
+
+        for (int k = 0; k < 5; k++) {
+            assertFalse(executor.prepare("function(x) { return x * ; } // " + k, true).ok);
+            assertFalse(executor.prepare("lambda x: x + # " + k, false).ok);
+        }
+        assertEquals(0, executor.cachedFunctions());
+
+        assertTrue(executor.prepare("function(x) { return x * 2; }", true).ok);           // нативная
+        assertTrue(executor.prepare("function(x) { var y = x; return y; }", true).ok);   // Nashorn
+        assertTrue(executor.prepare("lambda x: sum(range(x))", false).ok);               // python-процесс
+        assertEquals(3, executor.cachedFunctions());
+    }
+
+    @Test
+    void testBatchTimeoutScalesWithSize() {
+        executor = new FunctionExecutor(interpreted());
+
+        // 3 × 0.9 с — больше одного TIMEOUT_MS, но по 0.9 с на элемент
+        FunctionExecutor.BatchResult batch = executor.executePythonBatchAsync(
+                "lambda x: __import__('time').sleep(0.9) or x", new int[]{1, 2, 3}).join();
+        for (int i = 0; i < 3; i++) {
+            assertNull(batch.errors[i], batch.errors[i]);
+            assertEquals(i + 1.0, batch.values[i]);
+        }
+        assertEquals(3 * FunctionExecutor.TIMEOUT_MS, FunctionExecutor.batchTimeoutMs(3));
+    }
+
+    @Test
+    void testPythonBatchMatchesSingleCalls() {
+        executor = new FunctionExecutor(interpreted());
+        String func = "lambda x: 10 // (x - 2)";
+
+        // один B-кадр воркеру: ошибка одного элемента не задевает остальные
+        int[] xs = {1, 2, 3, 4};
+        FunctionExecutor.BatchResult batch = executor.executePythonBatchAsync(func, xs).join();
+        for (int i = 0; i < xs.length; i++) {
+            FunctionExecutor.ExecutionResult single = executor.executePython(func, xs[i]);
+            FunctionExecutor.ExecutionResult item = batch.get(i);
+            assertEquals(single.ok, item.ok, "x=" + xs[i]);
+            assertEquals(single.error, item.error, "x=" + xs[i]);
+            if (single.ok) {
+                assertEquals(single.value, item.value);
+            }
+        }
+        assertTrue(batch.errors[1].startsWith("Python error: ZeroDivisionError"), batch.errors[1]);
+    }
+
+    @Test
+    void testJsFunctionEndingWithLineComment() {
+        executor = new FunctionExecutor(interpreted());
+        String square = "function(x) { return x * x; } // квадрат";
+        String plus = "function(x) { return x + 1; } // плюс один";
+
+        FunctionExecutor.ExecutionResult single = executor.executeJs(square, 3);
+        assertTrue(single.ok, single.error);
+        assertEquals(9.0, single.value);
+
+        FunctionExecutor.BatchResult batch = executor.executeJsBatchAsync(square, new int[]{1, 2}).join();
+        assertNull(batch.errors[0], batch.errors[0]);
+        assertEquals(4.0, batch.values[1]);
+
+        List<FunctionExecutor.ExecutionResult> fused = executor.executeJsAllAsync(List.of(square, plus), 5).join();
+        assertTrue(fused.get(0).ok, fused.get(0).error);
+        assertEquals(25.0, fused.get(0).value);
+        assertEquals(6.0, fused.get(1).value);
+    }
+
+    @Test
+    void testNativeAndInterpretedAgreeOnNamespace() {
+        executor = new FunctionExecutor(new ExecutorConfig());
+        FunctionExecutor interpreter = new FunctionExecutor(interpreted());
+        try {
+            for (String func : new String[]{"lambda x: math.sqrt(x)", "def f(x): import math; return math.sqrt(x)"}) {
+                FunctionExecutor.ExecutionResult fast = executor.executePython(func, 16);
+                FunctionExecutor.ExecutionResult slow = interpreter.executePython(func, 16);
+                assertEquals(slow.ok, fast.ok, func);
+                assertEquals(slow.value, fast.value, func);
+            }
+            assertFalse(interpreter.executePython("lambda x: math.sqrt(x)", 16).ok);
+        } finally {
+            interpreter.destroy();
+        }
+    }
+
+    @Test
+    void testTimeoutCompletesFromSharedTimer() throws InterruptedException {
+        executor = new FunctionExecutor(interpreted());
+        long start = System.nanoTime();
+
+        FunctionExecutor.ExecutionResult r = executor.executePythonAsync(
+                "lambda x: __import__('time').sleep(30) or x", 1).join();
+        long elapsedMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        assertTrue(r.timedOut, r.error);
+        assertEquals("Python timeout > " + FunctionExecutor.TIMEOUT_MS + " ms", r.error);
+        assertTrue(elapsedMs < FunctionExecutor.TIMEOUT_MS + 2000, "elapsed " + elapsedMs + " ms");
+        awaitNoTimers();
+    }
+
+    @Test
+    void testTimersAreCancelledOnCompletion() throws InterruptedException {
+        executor = new FunctionExecutor(interpreted());
+        List<CompletableFuture<FunctionExecutor.ExecutionResult>> calls = new ArrayList<>();
+        for (int x = 0; x < 50; x++) {
+            calls.add(executor.executeJsAsync("function(x) { return x + 1; }", x));
+            calls.add(executor.executePythonAsync("lambda x: x + 1", x));
+        }
+        for (CompletableFuture<FunctionExecutor.ExecutionResult> call : calls) {
+            assertTrue(call.join().ok, call.join().error);
+        }
+        // таймеры отменены сразу, а не висят до срабатывания через TIMEOUT_MS
+        awaitNoTimers();
+    }
+
+    @Test
+    void testRejectedWhenBulkheadIsFull() {
+        ExecutorConfig settings = interpreted();
+        settings.setPythonWorkers(1);
+        settings.setBulkheadQueue(1);
+        settings.setQueueTimeoutMs(150);
+        executor = new FunctionExecutor(settings);
+        String slow = "lambda x: __import__('time').sleep(0.5) or x";
+
+        CompletableFuture<FunctionExecutor.ExecutionResult> running = executor.executePythonAsync(slow, 1);
+        CompletableFuture<FunctionExecutor.ExecutionResult> queued = executor.executePythonAsync(slow, 2);
+        FunctionExecutor.ExecutionResult full = executor.executePythonAsync(slow, 3).join();
+        assertTrue(full.rejected, full.error);
+        assertTrue(full.error.startsWith("Python rejected: bulkhead ") && full.error.contains(" is full"), full.error);
+
+        // второй вызов ждал в очереди дольше queueTimeoutMs
+        FunctionExecutor.ExecutionResult expired = queued.join();
+        assertTrue(expired.rejected, expired.error);
+        assertTrue(expired.error.contains("queued > 150 ms"), expired.error);
+        assertTrue(running.join().ok, running.join().error);
+    }
+
+    @Test
+    void testTimeoutReapsWorkerAndItsChildren() throws InterruptedException {
+        ExecutorConfig settings = interpreted();
+        settings.setPythonWorkers(1);
+        executor = new FunctionExecutor(settings);
+
+        // функция запускает дочерний процесс и оставляет его жить в воркере
+        FunctionExecutor.ExecutionResult spawned = executor.executePython(
+                "lambda x: __import__('subprocess').Popen(['sleep', '60']).pid", 1);
+        assertTrue(spawned.ok, spawned.error);
+        ProcessHandle child = ProcessHandle.of((long) spawned.value).orElseThrow();
+        assertTrue(child.isAlive());
+        assertEquals(1, executor.livePythonProcesses());
+        long reapedBefore = executor.reapedPythonProcesses();
+
+        // тот же воркер зависает и убивается по таймауту — вместе с потомком
+        assertTrue(executor.executePython("lambda x: __import__('time').sleep(30) or x", 2).timedOut);
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while ((child.isAlive() || executor.livePythonProcesses() > 0) && System.nanoTime() < deadline) {
+            Thread.sleep(20);
+        }
+        assertFalse(child.isAlive());
+        assertEquals(0, executor.livePythonProcesses());
+        assertEquals(reapedBefore + 1, executor.reapedPythonProcesses());
+    }
+
+    @Test
+    void testFusedJsMatchesSeparateCalls() {
+        executor = new FunctionExecutor(interpreted());
+        List<String> funcs = List.of(
+                "function(x) { var y = x * 2; return y; }",
+                "function(x) { throw new Error('boom ' + x); }",   // пересчитывается отдельно
+                "function(x) { return 'abc'; }",                  // не число
+                "function(x) { var y = x; return y - 1; }");
+
+        List<FunctionExecutor.ExecutionResult> fused = executor.executeJsAllAsync(funcs, 7).join();
+        assertEquals(funcs.size(), fused.size());
+        for (int i = 0; i < funcs.size(); i++) {
+            assertSameResult(executor.executeJs(funcs.get(i), 7), fused.get(i), funcs.get(i));
+        }
+        assertEquals(14.0, fused.get(0).value);
+        assertFalse(fused.get(1).ok);
+        assertTrue(fused.get(1).error.contains("boom 7"), fused.get(1).error);
+        assertEquals(6.0, fused.get(3).value);
+
+        // функция, которая не компилируется, — ошибка только у неё, остальные считаются
+        List<String> withBroken = List.of(funcs.get(0), "function(x) { return x * ; }", funcs.get(3));
+        List<FunctionExecutor.ExecutionResult> fallback = executor.executeJsAllAsync(withBroken, 7).join();
+        for (int i = 0; i < withBroken.size(); i++) {
+            assertSameResult(executor.executeJs(withBroken.get(i), 7), fallback.get(i), withBroken.get(i));
+        }
+        assertTrue(fallback.get(0).ok);
+        assertFalse(fallback.get(1).ok);
+        assertTrue(fallback.get(2).ok);
+    }
+
+    @Test
+    void testFusedTimeoutScalesWithFunctionCount() {
+        executor = new FunctionExecutor(interpreted());
+        // каждая функция укладывается в TIMEOUT_MS, все три подряд — нет
+        String slow = "function(x) { var t = java.lang.System.currentTimeMillis(); "
+                + "while (java.lang.System.currentTimeMillis() - t < 900) {} return x + %d; }";
+        List<String> funcs = List.of(String.format(slow, 1), String.format(slow, 2), String.format(slow, 3));
+
+        List<FunctionExecutor.ExecutionResult> fused = executor.executeJsAllAsync(funcs, 10).join();
+        for (int i = 0; i < funcs.size(); i++) {
+            assertTrue(fused.get(i).ok, fused.get(i).error);
+            assertEquals(11.0 + i, fused.get(i).value);
+        }
+    }
+
+    private static void assertSameResult(FunctionExecutor.ExecutionResult expected,
+                                         FunctionExecutor.ExecutionResult actual, String func) {
+        assertEquals(expected.ok, actual.ok, func);
+        assertEquals(expected.error, actual.error, func);
+        if (expected.ok) {
+            assertEquals(expected.value, actual.value, func);
+        }
+    }
+
+    /** Ждём заметно меньше TIMEOUT_MS: неотменённый таймер не успел бы сработать сам. */
+    private void awaitNoTimers() throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(500);
+        while (executor.pendingTimers() > 0 && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(0, executor.pendingTimers());
+    }
+}
@@ -0,0 +1,139 @@
+package com.example.webflaxcalc.executions;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import javax.script.Compilable;
+import javax.script.ScriptEngine;
+import javax.script.ScriptEngineManager;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit тесты для JsEnginePool
+ */
+class JsEnginePoolTest {
+
+    private final ScriptEngine engine = new ScriptEngineManager().getEngineByName("nashorn");
+    private final ExecutorService other = Executors.newSingleThreadExecutor();
+    private JsEnginePool pool;
+
+    @AfterEach
+    void tearDown() {
+        other.shutdownNow();
+        if (pool != null) {
+            pool.close();
+        }
+    }
+
+    @Test
+    void testMinAndMaxSize() throws Exception {
+        pool = new JsEnginePool(engine, 2, 3, 60_000);
+        assertEquals(2, pool.size());
+        assertEquals(2, pool.idleCount());
+
+        JsEnginePool.PooledEngine a = pool.acquire();
+        JsEnginePool.PooledEngine b = pool.acquire();
+        JsEnginePool.PooledEngine c = pool.acquire(); // сверх minIdle — создаётся
+        assertEquals(3, pool.size());
+        assertEquals(0, pool.idleCount());
+
+        // четвёртый вызов ждёт, пока движок не вернут
+        CompletableFuture<JsEnginePool.PooledEngine> waiting = CompletableFuture.supplyAsync(this::acquire, other);
+        assertThrows(TimeoutException.class, () -> waiting.get(200, TimeUnit.MILLISECONDS));
+        pool.release(b);
+        assertSame(b, waiting.get(5, TimeUnit.SECONDS));
+        assertEquals(3, pool.size());
+
+        pool.release(a);
+        pool.release(c);
+    }
+
+    @Test
+    void testThreadGetsItsLastEngine() throws Exception {
+        pool = new JsEnginePool(engine, 2, 2, 60_000);
+        JsEnginePool.PooledEngine mine = pool.acquire();
+        JsEnginePool.PooledEngine theirs = CompletableFuture.supplyAsync(this::acquire, other).get(5, TimeUnit.SECONDS);
+        assertNotSame(mine, theirs);
+
+        pool.release(mine);
+        pool.release(theirs); // теперь голова очереди — чужой движок
+        assertSame(mine, pool.acquire());
+        assertSame(theirs, CompletableFuture.supplyAsync(this::acquire, other).get(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    void testIdleEnginesAboveMinAreEvicted() throws Exception {
+        pool = new JsEnginePool(engine, 1, 3, 50);
+        JsEnginePool.PooledEngine a = pool.acquire();
+        JsEnginePool.PooledEngine b = pool.acquire();
+        JsEnginePool.PooledEngine c = pool.acquire();
+        pool.release(a);
+        pool.release(b);
+        pool.release(c);
+        assertEquals(3, pool.size());
+
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (pool.size() > 1 && System.nanoTime() < deadline) {
+            Thread.sleep(20);
+        }
+        assertEquals(1, pool.size());
+        assertEquals(1, pool.idleCount());
+
+        // оставшийся движок рабочий
+        JsEnginePool.PooledEngine left = pool.acquire();
+        assertEquals(42.0, ((Number) left.eval(((Compilable) engine).compile("__x * 2"), "__x", 21)).doubleValue());
+        pool.release(left);
+    }
+
+    @Test
+    void testGlobalStateDoesNotLeakBetweenCalls() throws Exception {
+        pool = new JsEnginePool(engine, 1, 1, 60_000);
+
+        // обычные функции не пачкают контекст — он не пересоздаётся
+        assertEquals("[1,2]", eval("JSON.stringify([1, 2])"));
+        assertEquals(2.0, ((Number) eval("(function(x) { return /a+/.test('aa') ? Java.type('java.lang.Math').abs(x) : 0; })(-2)"))
+                .doubleValue());
+        assertEquals(0, pool.resetCount());
+
+        // неявная глобальная переменная исчезает вместе с контекстом
+        assertEquals(1, ((Number) eval("(function() { leaked = 5; return 1; })()")).intValue());
+        assertEquals(1, pool.resetCount());
+        assertEquals("undefined", eval("typeof leaked"));
+
+        // встроенные объекты и глобальные функции не переопределяются
+        assertEquals(1.0, ((Number) eval("(function() { Math.floor = function() { return 42; }; return Math.floor(1.5); })()"))
+                .doubleValue());
+        assertEquals(7, ((Number) eval("(function() { parseInt = function() { return 0; }; return parseInt('7'); })()"))
+                .intValue());
+        assertEquals(1.0, ((Number) eval("Math.floor(1.9)")).doubleValue());
+
+        // переменные вызова не остаются в контексте
+        JsEnginePool.PooledEngine pe = pool.acquire();
+        pe.eval(((Compilable) engine).compile("__x"), "__x", 3);
+        pool.release(pe);
+        assertEquals("undefined", eval("typeof __x"));
+    }
+
+    private Object eval(String script) throws Exception {
+        JsEnginePool.PooledEngine pe = pool.acquire();
+        try {
+            return pe.eval(((Compilable) engine).compile(script), "__unused", 0);
+        } finally {
+            pool.release(pe);
+        }
+    }
+
+    private JsEnginePool.PooledEngine acquire() {
+        try {
+            return pool.acquire();
+        } catch (InterruptedException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
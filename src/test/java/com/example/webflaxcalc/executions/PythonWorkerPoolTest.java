@@ -0,0 +1,78 @@
+package com.example.webflaxcalc.executions;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit тесты для PythonWorkerPool
+ */
+class PythonWorkerPoolTest {
+
+    private PythonWorkerPool pool;
+
+    @AfterEach
+    void tearDown() {
+        if (pool != null) {
+            pool.close();
+        }
+    }
+
+    @Test
+    void testWorkerIsReusedAndDiscardedAfterFailure() throws Exception {
+        pool = new PythonWorkerPool(2, 60_000);
+        PythonWorker w = pool.acquire();
+        pool.release(w, true);
+        assertSame(w, pool.acquire());
+        assertEquals(1, pool.size());
+
+        // непригодный воркер не возвращается: следующий acquire запускает новый процесс
+        pool.release(w, false);
+        PythonWorker next = pool.acquire();
+        assertNotSame(w, next);
+        assertTrue(next.ping());
+        assertEquals(1, pool.size());
+        await(() -> pool.reapedProcesses() == 1 && pool.liveProcesses() == 1);
+        pool.release(next, true);
+    }
+
+    @Test
+    void testHealthCheckRestartsCrashedWorker() throws Exception {
+        pool = new PythonWorkerPool(1, 50);
+        PythonWorker w = pool.acquire();
+        pool.release(w, true);
+
+        w.destroy(); // процесс умер, пока воркер свободен
+        await(() -> pool.reapedProcesses() == 1 && pool.liveProcesses() == 1);
+
+        PythonWorker restarted = pool.acquire();
+        assertNotSame(w, restarted);
+        assertTrue(restarted.isAlive());
+        assertEquals("4", restarted.call(pool.functionId("lambda x: x * x"), "lambda x: x * x", 2).text);
+        pool.release(restarted, true);
+    }
+
+    @Test
+    void testFunctionIdsAreStable() {
+        pool = new PythonWorkerPool(1, 60_000);
+        int id = pool.functionId("lambda x: x");
+        assertEquals(id, pool.functionId("lambda x: x"));
+        assertNotEquals(id, pool.functionId("lambda x: -x"));
+        assertEquals(2, pool.functionCount());
+
+        pool.forget("lambda x: x", id);
+        assertEquals(1, pool.functionCount());
+    }
+
+    private static void await(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (!condition.getAsBoolean() && System.nanoTime() < deadline) {
+            Thread.sleep(20);
+        }
+        assertTrue(condition.getAsBoolean());
+    }
+}
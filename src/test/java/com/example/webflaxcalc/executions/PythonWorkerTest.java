@@ -0,0 +1,80 @@
+package com.example.webflaxcalc.executions;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit тесты для PythonWorker: протокол кадров с настоящим процессом worker.py
+ */
+class PythonWorkerTest {
+
+    private PythonWorkerPool pool;
+    private PythonWorker worker;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        pool = new PythonWorkerPool(1, 60_000);
+        worker = pool.acquire();
+    }
+
+    @AfterEach
+    void tearDown() {
+        pool.close();
+    }
+
+    @Test
+    void testDefineCallAndPing() throws IOException {
+        assertTrue(worker.ping());
+
+        // D загружает функцию один раз, C вызывает её по номеру
+        assertTrue(worker.load(1, "lambda x: x * 3").ok);
+        PythonWorker.Reply reply = worker.call(1, "lambda x: x * 3", 14);
+        assertTrue(reply.ok, reply.text);
+        assertEquals("42", reply.text);
+
+        // def и print(): вывод функции уходит в stderr и не ломает кадры
+        String def = "def f(x):\n    print('noise')\n    return x / 4";
+        reply = worker.call(2, def, 2);
+        assertTrue(reply.ok, reply.text);
+        assertEquals("0.5", reply.text);
+
+        // B: результаты по элементам, ошибка одного не задевает остальные
+        List<PythonWorker.Reply> batch = worker.callBatch(3, "lambda x: 6 // x", new int[]{3, 0, -2});
+        assertEquals(3, batch.size());
+        assertEquals("2", batch.get(0).text);
+        assertFalse(batch.get(1).ok);
+        assertTrue(batch.get(1).text.startsWith("ZeroDivisionError"), batch.get(1).text);
+        assertEquals("-3", batch.get(2).text);
+        assertTrue(worker.ping());
+    }
+
+    @Test
+    void testErrorsKeepWorkerUsable() throws IOException {
+        PythonWorker.Reply syntax = worker.load(1, "lambda x: x +");
+        assertFalse(syntax.ok);
+        assertTrue(syntax.text.startsWith("SyntaxError"), syntax.text);
+
+        PythonWorker.Reply runtime = worker.call(2, "lambda x: undefined_name", 1);
+        assertFalse(runtime.ok);
+        assertTrue(runtime.text.startsWith("NameError"), runtime.text);
+
+        // функция, которая не загрузилась, не считается загруженной
+        assertEquals("2", worker.call(1, "lambda x: x + 1", 1).text);
+        assertTrue(worker.ping());
+    }
+
+    @Test
+    void testCrashIsReportedAsIOException() {
+        IOException e = assertThrows(IOException.class,
+                () -> worker.call(1, "lambda x: __import__('os')._exit(3)", 1));
+        assertEquals("exited with code 3", worker.describeFailure(e));
+        assertFalse(worker.isAlive());
+        assertFalse(worker.ping());
+    }
+}
@@ -0,0 +1,44 @@
+package com.example.webflaxcalc.executions;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit тесты для ResultCache
+ */
+class ResultCacheTest {
+
+    @Test
+    void testHitsAndMisses() {
+        ResultCache cache = new ResultCache(10);
+        assertNull(cache.get("JS", "x => x * x", 3));
+        cache.put("JS", "x => x * x", 3, 9.0);
+
+        assertEquals(Double.valueOf(9.0), cache.get("JS", "x => x * x", 3));
+        // другой язык, другой x и другой текст — разные ключи
+        assertNull(cache.get("Python", "x => x * x", 3));
+        assertNull(cache.get("JS", "x => x * x", 4));
+        assertNull(cache.get("JS", new String("x => x * x ").trim() + "+0", 3));
+        // равный, но не тот же экземпляр строки — тот же ключ
+        assertEquals(Double.valueOf(9.0), cache.get("JS", new String("x => x * x"), 3));
+
+        assertEquals(2, cache.hitCount());
+        assertEquals(4, cache.missCount());
+    }
+
+    @Test
+    void testLeastRecentlyUsedIsEvicted() {
+        ResultCache cache = new ResultCache(2);
+        cache.put("JS", "f", 1, 1.0);
+        cache.put("JS", "f", 2, 2.0);
+        cache.get("JS", "f", 1); // 1 теперь свежее, чем 2
+        cache.put("JS", "f", 3, 3.0);
+
+        assertEquals(2, cache.size());
+        assertEquals(1, cache.evictionCount());
+        assertEquals(Double.valueOf(1.0), cache.get("JS", "f", 1));
+        assertNull(cache.get("JS", "f", 2));
+        assertEquals(Double.valueOf(3.0), cache.get("JS", "f", 3));
+    }
+}
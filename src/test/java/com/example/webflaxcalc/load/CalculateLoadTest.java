@@ -0,0 +1,124 @@
+package com.example.webflaxcalc.load;
+
+import com.example.webflaxcalc.configs.ConfigJson;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.boot.test.web.server.LocalServerPort;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Primary;
+import org.springframework.http.MediaType;
+import org.springframework.http.client.reactive.ReactorClientHttpConnector;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.netty.http.client.HttpClient;
+import reactor.netty.resources.ConnectionProvider;
+
+import java.io.InputStream;
+import java.time.Duration;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Нагрузочный прогон /api/calculate на встроенном сервере: load.subscribers одновременных
+ * SSE-подписчиков читают поток строк, по каждой строке фиксируется время прихода.
+ * Результат — JSON-отчёт LoadReport (time-to-first-row, jitter относительно interval,
+ * rows/sec, p50/p99/p999); при заданном load.baseline тест падает на регрессии.
+ *
+ * Помечен тегом "load" и в обычный mvn test не входит:
+ *   mvn test -Pload -Dload.subscribers=200 -Dload.count=500 -Dload.ordered=false
+ */
+@Tag("load")
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
+class CalculateLoadTest {
+
+    private static final LoadSettings SETTINGS = LoadSettings.fromSystemProperties();
+
+    /** config.json прогона: внешний файл load.config (набор функций) и load.interval. */
+    @TestConfiguration
+    static class LoadConfig {
+
+        @Bean
+        @Primary
+        ConfigJson loadConfigJson(ObjectMapper mapper) throws Exception {
+            ConfigJson config;
+            if (SETTINGS.config != null) {
+                config = mapper.readValue(SETTINGS.config.toFile(), ConfigJson.class);
+            } else {
+                try (InputStream is = getClass().getClassLoader().getResourceAsStream("config.json")) {
+                    config = mapper.readValue(is, ConfigJson.class);
+                }
+            }
+            if (SETTINGS.intervalMs != null) {
+                config.setInterval(SETTINGS.intervalMs);
+            }
+            return config;
+        }
+    }
+
+    @LocalServerPort
+    private int port;
+
+    @Autowired
+    private ConfigJson config;
+
+    @Test
+    void testCalculateUnderLoad() throws Exception {
+        // по соединению на подписчика: пул по умолчанию поставил бы длинные SSE-потоки в очередь
+        ConnectionProvider connections = ConnectionProvider.builder("load")
+                .maxConnections(SETTINGS.subscribers)
+                .pendingAcquireMaxCount(-1)
+                .build();
+        WebClient client = WebClient.builder()
+                .baseUrl("http://localhost:" + port)
+                .clientConnector(new ReactorClientHttpConnector(HttpClient.create(connections)))
+                .build();
+        try {
+            long start = System.nanoTime();
+            List<SubscriberTrace> traces = Flux.range(0, SETTINGS.subscribers)
+                    .flatMap(n -> subscribe(client), SETTINGS.subscribers)
+                    .collectList()
+                    .block(Duration.ofSeconds(SETTINGS.timeoutSec));
+            long duration = System.nanoTime() - start;
+
+            LoadReport report = new LoadReport(SETTINGS, config, traces, duration);
+            report.write(SETTINGS.report);
+
+            assertEquals(0, report.failedSubscribers, "failed subscribers, see " + SETTINGS.report);
+            assertEquals((long) SETTINGS.expectedRows(config.functionList().size()) * SETTINGS.subscribers, report.rows);
+            if (SETTINGS.baseline != null) {
+                List<String> violations = report.compareTo(SETTINGS.baseline, SETTINGS.tolerance);
+                assertTrue(violations.isEmpty(), "regression against " + SETTINGS.baseline + ": " + violations);
+            }
+        } finally {
+            connections.dispose();
+        }
+    }
+
+    /** Один подписчик: время подписки и прихода каждой строки. Ошибка потока записывается в трассу. */
+    private Mono<SubscriberTrace> subscribe(WebClient client) {
+        return Mono.defer(() -> {
+            SubscriberTrace trace = new SubscriberTrace(System.nanoTime());
+            return client.get()
+                    .uri(b -> b.path("/api/calculate")
+                            .queryParam("count", SETTINGS.count)
+                            .queryParam("ordered", SETTINGS.ordered)
+                            .queryParam("mode", SETTINGS.mode)
+                            .build())
+                    .accept(MediaType.TEXT_EVENT_STREAM)
+                    .retrieve()
+                    .bodyToFlux(String.class)
+                    .doOnNext(row -> trace.onRow(row, System.nanoTime()))
+                    .then(Mono.just(trace))
+                    .onErrorResume(e -> {
+                        trace.failure = e;
+                        return Mono.just(trace);
+                    });
+        });
+    }
+}
@@ -0,0 +1,154 @@
+package com.example.webflaxcalc.load;
+
+import com.example.webflaxcalc.configs.ConfigJson;
+import com.example.webflaxcalc.configs.FunctionConfig;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * LoadReport — итог нагрузочного прогона /api/calculate в машиночитаемом виде (JSON).
+ *
+ * Все времена — миллисекунды (double):
+ *  - timeToFirstRow — от подписки до первой строки, по подписчикам;
+ *  - interRowGap — интервал между соседними строками одного подписчика;
+ *  - jitter — опоздание строки относительно сетки interval: для строки итерации i
+ *    offset = arrival − i × interval, jitter = offset − min(offset) по подписчику.
+ *    Так не важно, сколько строк на итерацию (ordered — одна, unordered — две).
+ *
+ * compareTo сравнивает отчёт с базовым (baseline) для регрессионного гейта.
+ */
+public class LoadReport {
+
+    /** Перцентили распределения, мс. */
+    public static class Percentiles {
+        public final long samples;
+        public final double mean;
+        public final double p50;
+        public final double p99;
+        public final double p999;
+        public final double max;
+
+        Percentiles(long[] nanos) {
+            long[] sorted = nanos.clone();
+            Arrays.sort(sorted);
+            this.samples = sorted.length;
+            this.mean = sorted.length == 0 ? 0 : ms(Arrays.stream(sorted).sum() / sorted.length);
+            this.p50 = ms(percentile(sorted, 0.5));
+            this.p99 = ms(percentile(sorted, 0.99));
+            this.p999 = ms(percentile(sorted, 0.999));
+            this.max = sorted.length == 0 ? 0 : ms(sorted[sorted.length - 1]);
+        }
+
+        /** Nearest-rank перцентиль отсортированного массива (0, если массив пуст). */
+        static long percentile(long[] sorted, double q) {
+            if (sorted.length == 0) {
+                return 0;
+            }
+            int rank = (int) Math.ceil(q * sorted.length);
+            return sorted[Math.max(0, Math.min(sorted.length, rank) - 1)];
+        }
+
+        private static double ms(long nanos) {
+            return nanos / 1_000_000.0;
+        }
+    }
+
+    public final int subscribers;
+    public final int count;
+    public final boolean ordered;
+    public final String mode;
+    public final int intervalMs;
+    public final List<String> functions;
+
+    public final long rows;
+    public final long errorRows;
+    public final long failedSubscribers;
+    public final double durationMs;
+    public final double rowsPerSec;
+
+    public final Percentiles timeToFirstRow;
+    public final Percentiles interRowGap;
+    public final Percentiles jitter;
+
+    LoadReport(LoadSettings settings, ConfigJson config, List<SubscriberTrace> traces, long durationNanos) {
+        this.subscribers = settings.subscribers;
+        this.count = settings.count;
+        this.ordered = settings.ordered;
+        this.mode = settings.mode;
+        this.intervalMs = config.getInterval();
+        this.functions = config.functionList().stream().map(FunctionConfig::getFunction).toList();
+
+        long rows = 0;
+        long errorRows = 0;
+        long failed = 0;
+        List<Long> ttfr = new ArrayList<>();
+        List<Long> gaps = new ArrayList<>();
+        List<Long> jitter = new ArrayList<>();
+        for (SubscriberTrace trace : traces) {
+            rows += trace.rows();
+            errorRows += trace.errorRows;
+            if (trace.failure != null) {
+                failed++;
+            }
+            if (trace.rows() > 0) {
+                ttfr.add(trace.arrivals[0] - trace.startNanos);
+            }
+            trace.collectGaps(gaps);
+            trace.collectJitter(intervalMs * 1_000_000L, jitter);
+        }
+        this.rows = rows;
+        this.errorRows = errorRows;
+        this.failedSubscribers = failed;
+        this.durationMs = durationNanos / 1_000_000.0;
+        this.rowsPerSec = durationNanos == 0 ? 0 : rows * 1e9 / durationNanos;
+        this.timeToFirstRow = new Percentiles(toArray(ttfr));
+        this.interRowGap = new Percentiles(toArray(gaps));
+        this.jitter = new Percentiles(toArray(jitter));
+    }
+
+    /** Записать отчёт в file (каталоги создаются). */
+    public void write(Path file) throws IOException {
+        if (file.getParent() != null) {
+            Files.createDirectories(file.getParent());
+        }
+        new ObjectMapper().enable(SerializationFeature.INDENT_OUTPUT).writeValue(file.toFile(), this);
+    }
+
+    /**
+     * Сравнить с базовым отчётом: rowsPerSec не ниже baseline × (1 − tolerance),
+     * p99 timeToFirstRow и jitter не выше baseline × (1 + tolerance).
+     *
+     * @return список нарушений (пустой — регрессии нет)
+     */
+    public List<String> compareTo(Path baseline, double tolerance) throws IOException {
+        JsonNode base = new ObjectMapper().readTree(baseline.toFile());
+        List<String> violations = new ArrayList<>();
+        double minRate = base.path("rowsPerSec").asDouble() * (1 - tolerance);
+        if (rowsPerSec < minRate) {
+            violations.add(String.format("rowsPerSec %.1f < %.1f", rowsPerSec, minRate));
+        }
+        notAbove(violations, "timeToFirstRow.p99", timeToFirstRow.p99,
+                base.path("timeToFirstRow").path("p99").asDouble(), tolerance);
+        notAbove(violations, "jitter.p99", jitter.p99, base.path("jitter").path("p99").asDouble(), tolerance);
+        return violations;
+    }
+
+    private static void notAbove(List<String> violations, String name, double value, double base, double tolerance) {
+        double max = base * (1 + tolerance);
+        if (value > max) {
+            violations.add(String.format("%s %.3f ms > %.3f ms", name, value, max));
+        }
+    }
+
+    private static long[] toArray(List<Long> values) {
+        return values.stream().mapToLong(Long::longValue).toArray();
+    }
+}
@@ -0,0 +1,57 @@
+package com.example.webflaxcalc.load;
+
+import com.example.webflaxcalc.configs.ConfigJson;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit тесты для LoadReport
+ */
+class LoadReportTest {
+
+    private static final long MS = 1_000_000L;
+
+    @Test
+    void testPercentilesNearestRank() {
+        long[] sorted = new long[1000];
+        for (int i = 0; i < sorted.length; i++) {
+            sorted[i] = i + 1;
+        }
+        assertEquals(500, LoadReport.Percentiles.percentile(sorted, 0.5));
+        assertEquals(990, LoadReport.Percentiles.percentile(sorted, 0.99));
+        assertEquals(999, LoadReport.Percentiles.percentile(sorted, 0.999));
+        assertEquals(0, LoadReport.Percentiles.percentile(new long[0], 0.99));
+    }
+
+    @Test
+    void testJitterAgainstInterval(@TempDir Path dir) throws Exception {
+        ConfigJson config = new ConfigJson();
+        config.setInterval(100);
+
+        // unordered: две строки на итерацию; итерация 2 опоздала на 30 мс
+        SubscriberTrace trace = new SubscriberTrace(0);
+        trace.onRow("0,1,0.000000,1", 10 * MS);
+        trace.onRow("0,2,10.000000,1", 11 * MS);
+        trace.onRow("1,1,1.000000,1", 110 * MS);
+        trace.onRow("1,2,error: boom", 111 * MS);
+        trace.onRow("2,1,4.000000,1", 240 * MS);
+
+        LoadReport report = new LoadReport(LoadSettings.fromSystemProperties(), config, List.of(trace), 1000 * MS);
+
+        assertEquals(5, report.rows);
+        assertEquals(1, report.errorRows);
+        assertEquals(5.0, report.rowsPerSec, 1e-9);
+        assertEquals(10.0, report.timeToFirstRow.p50, 1e-9);
+        assertEquals(30.0, report.jitter.max, 1e-9);
+        assertEquals(1.0, report.jitter.p50, 1e-9);
+
+        Path baseline = dir.resolve("baseline.json");
+        report.write(baseline);
+        assertTrue(report.compareTo(baseline, 0.1).isEmpty());
+    }
+}
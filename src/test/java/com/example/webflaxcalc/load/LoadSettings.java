@@ -0,0 +1,55 @@
+package com.example.webflaxcalc.load;
+
+import java.nio.file.Path;
+
+/**
+ * Параметры нагрузочного прогона из системных свойств (-Dload.*):
+ *  - load.subscribers: сколько одновременных SSE-подписчиков (по умолчанию 50)
+ *  - load.count / load.ordered / load.mode: параметры запроса /api/calculate (100 / true / stream)
+ *  - load.config: внешний config.json с набором функций и interval; без него — config.json из classpath
+ *  - load.interval: переопределить interval из config.json, мс
+ *  - load.report: куда записать JSON-отчёт (target/load-report.json)
+ *  - load.baseline: базовый отчёт для сравнения; без него сравнение не выполняется
+ *  - load.tolerance: допустимое ухудшение относительно baseline (0.2 — 20%)
+ *  - load.timeoutSec: предельное время прогона (300)
+ */
+class LoadSettings {
+
+    final int subscribers;
+    final int count;
+    final boolean ordered;
+    final String mode;
+    final Path config;
+    final Integer intervalMs;
+    final Path report;
+    final Path baseline;
+    final double tolerance;
+    final long timeoutSec;
+
+    private LoadSettings() {
+        this.subscribers = Integer.getInteger("load.subscribers", 50);
+        this.count = Integer.getInteger("load.count", 100);
+        this.ordered = Boolean.parseBoolean(System.getProperty("load.ordered", "true"));
+        this.mode = System.getProperty("load.mode", "stream");
+        this.config = path("load.config", null);
+        this.intervalMs = Integer.getInteger("load.interval");
+        this.report = path("load.report", "target/load-report.json");
+        this.baseline = path("load.baseline", null);
+        this.tolerance = Double.parseDouble(System.getProperty("load.tolerance", "0.2"));
+        this.timeoutSec = Long.getLong("load.timeoutSec", 300);
+    }
+
+    static LoadSettings fromSystemProperties() {
+        return new LoadSettings();
+    }
+
+    /** Сколько строк должен получить каждый подписчик при functions функциях в потоке. */
+    int expectedRows(int functions) {
+        return ordered ? count : count * functions;
+    }
+
+    private static Path path(String property, String defaultValue) {
+        String value = System.getProperty(property, defaultValue);
+        return value == null || value.isBlank() ? null : Path.of(value);
+    }
+}
@@ -0,0 +1,63 @@
+package com.example.webflaxcalc.load;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Трасса одного SSE-подписчика: время подписки и для каждой строки — номер итерации
+ * (первый столбец CSV) и время прихода (System.nanoTime). Пишется одним потоком подписчика.
+ */
+class SubscriberTrace {
+
+    final long startNanos;
+    long[] arrivals = new long[64];
+    int[] iterations = new int[64];
+    private int rows;
+    long errorRows;
+    Throwable failure;
+
+    SubscriberTrace(long startNanos) {
+        this.startNanos = startNanos;
+    }
+
+    /** Учесть строку row ("i,..."), пришедшую в nanos. */
+    void onRow(String row, long nanos) {
+        if (rows == arrivals.length) {
+            arrivals = Arrays.copyOf(arrivals, rows * 2);
+            iterations = Arrays.copyOf(iterations, rows * 2);
+        }
+        int comma = row.indexOf(',');
+        iterations[rows] = Integer.parseInt(comma < 0 ? row.trim() : row.substring(0, comma).trim());
+        arrivals[rows] = nanos;
+        rows++;
+        if (row.contains("error:")) {
+            errorRows++;
+        }
+    }
+
+    int rows() {
+        return rows;
+    }
+
+    void collectGaps(List<Long> out) {
+        for (int r = 1; r < rows; r++) {
+            out.add(arrivals[r] - arrivals[r - 1]);
+        }
+    }
+
+    /** Опоздание каждой строки относительно сетки intervalNanos, начиная от самой ранней строки. */
+    void collectJitter(long intervalNanos, List<Long> out) {
+        if (rows == 0) {
+            return;
+        }
+        long[] offsets = new long[rows];
+        long min = Long.MAX_VALUE;
+        for (int r = 0; r < rows; r++) {
+            offsets[r] = arrivals[r] - iterations[r] * intervalNanos;
+            min = Math.min(min, offsets[r]);
+        }
+        for (long offset : offsets) {
+            out.add(offset - min);
+        }
+    }
+}
@@ -0,0 +1,112 @@
+package com.example.webflaxcalc.services;
+
+import com.example.webflaxcalc.configs.LimiterConfig;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit тесты для AdaptiveLimiter
+ */
+class AdaptiveLimiterTest {
+
+    private static final long MS = 1_000_000L;
+
+    /** Незавершённые вызовы, занимающие места лимита. */
+    private final List<CompletableFuture<String>> pending = new ArrayList<>();
+
+    private LimiterConfig settings(int initialLimit, long queueMs) {
+        LimiterConfig settings = new LimiterConfig();
+        settings.setEnabled(true);
+        settings.setInitialLimit(initialLimit);
+        settings.setMinLimit(1);
+        settings.setMaxLimit(100);
+        settings.setQueueMs(queueMs);
+        return settings;
+    }
+
+    @Test
+    void testRejectsOverLimitAndReleasesOnCompletion() {
+        AdaptiveLimiter limiter = new AdaptiveLimiter(settings(2, 0));
+        CompletableFuture<String> first = new CompletableFuture<>();
+        CompletableFuture<String> second = new CompletableFuture<>();
+
+        CompletableFuture<String> r1 = limiter.call(() -> first, error -> error, r -> false);
+        CompletableFuture<String> r2 = limiter.call(() -> second, error -> error, r -> false);
+        CompletableFuture<String> r3 = limiter.call(() -> CompletableFuture.completedFuture("ok"), error -> error, r -> false);
+
+        assertTrue(r3.join().startsWith("limit rejected"));
+        assertEquals(2, limiter.inFlight());
+        assertEquals(1, limiter.rejectedCount());
+
+        first.complete("a");
+        assertEquals("a", r1.join());
+        r2.cancel(true);
+        assertTrue(second.isCancelled());
+        assertEquals(0, limiter.inFlight());
+    }
+
+    @Test
+    void testWaiterGetsFreedSlot() {
+        AdaptiveLimiter limiter = new AdaptiveLimiter(settings(1, 5_000));
+        CompletableFuture<String> first = new CompletableFuture<>();
+
+        CompletableFuture<String> r1 = limiter.call(() -> first, error -> error, r -> false);
+        CompletableFuture<String> r2 = limiter.call(() -> CompletableFuture.completedFuture("b"), error -> error, r -> false);
+        assertFalse(r2.isDone());
+
+        first.complete("a");
+        assertEquals("a", r1.join());
+        assertEquals("b", r2.join());
+        assertEquals(0, limiter.inFlight());
+    }
+
+    @Test
+    void testLimitFollowsLatency() {
+        AdaptiveLimiter limiter = new AdaptiveLimiter(settings(10, 0));
+
+        // стабильная задержка при полной загрузке — лимит растёт
+        for (int i = 0; i < 50; i++) {
+            occupyAll(limiter);
+            limiter.onSample(10 * MS, false);
+            releaseAll(limiter);
+        }
+        int grown = limiter.currentLimit();
+        assertTrue(grown > 10, "limit " + grown);
+
+        // задержка выросла в 10 раз — лимит снижается
+        for (int i = 0; i < 20; i++) {
+            occupyAll(limiter);
+            limiter.onSample(100 * MS, false);
+            releaseAll(limiter);
+        }
+        assertTrue(limiter.currentLimit() < grown, "limit " + limiter.currentLimit());
+
+        // отказ исполнителя — снижение в 0.9 раза
+        int before = limiter.currentLimit();
+        occupyAll(limiter);
+        limiter.onSample(0, true);
+        releaseAll(limiter);
+        assertTrue(limiter.currentLimit() < before);
+    }
+
+    /** Занять все места лимита незавершёнными вызовами. */
+    private void occupyAll(AdaptiveLimiter limiter) {
+        while (limiter.inFlight() < limiter.currentLimit()) {
+            CompletableFuture<String> call = new CompletableFuture<>();
+            pending.add(call);
+            limiter.call(() -> call, error -> error, r -> false);
+        }
+    }
+
+    /** Отменить занятые вызовы (отмена освобождает место без оценки задержки). */
+    private void releaseAll(AdaptiveLimiter limiter) {
+        pending.forEach(call -> call.cancel(true));
+        pending.clear();
+        assertEquals(0, limiter.inFlight());
+    }
+}
@@ -0,0 +1,52 @@
+package com.example.webflaxcalc.services;
+
+import com.example.webflaxcalc.executions.FunctionExecutor;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit тесты для CalculationMetrics
+ */
+class CalculationMetricsTest {
+
+    @Test
+    void testResultsByOutcome() {
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        CalculationMetrics metrics = new CalculationMetrics(registry);
+
+        metrics.record(1, "js", FunctionExecutor.ExecutionResult.ok(1.0, 1_000, 2_000_000));
+        metrics.record(1, "js", FunctionExecutor.ExecutionResult.ok(2.0, 0, 500_000));
+        metrics.record(1, "js", FunctionExecutor.ExecutionResult.timeout("JS timeout > 2000 ms"));
+        metrics.record(2, "python", FunctionExecutor.ExecutionResult.rejected("Python rejected: full"));
+        metrics.record(2, "python", FunctionExecutor.ExecutionResult.error("Python error: boom"));
+
+        assertEquals(2.0, registry.get("function.results").tag("function", "1").tag("outcome", "ok").counter().count());
+        assertEquals(1.0, registry.get("function.results").tag("function", "1").tag("outcome", "timeout").counter().count());
+        assertEquals(1.0, registry.get("function.results").tag("function", "2").tag("outcome", "rejected").counter().count());
+        assertEquals(1.0, registry.get("function.results").tag("function", "2").tag("outcome", "error").counter().count());
+
+        // время учитывается только у успешных результатов
+        assertEquals(2, registry.get("function.evaluation").tag("function", "1").timer().count());
+        assertEquals(2.501, registry.get("function.evaluation").tag("function", "1").timer()
+                .totalTime(TimeUnit.MILLISECONDS), 1e-9);
+        assertNull(registry.find("function.evaluation").tag("function", "2").timer());
+    }
+
+    @Test
+    void testExecutorGauges() {
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        FunctionExecutor executor = new FunctionExecutor();
+        try {
+            new CalculationMetrics(registry).bindExecutor(executor);
+            assertEquals(0.0, registry.get("executor.active").tag("language", "js").gauge().value());
+            assertEquals(0.0, registry.get("executor.queued").tag("language", "python").gauge().value());
+            assertEquals(0.0, registry.get("python.processes.live").gauge().value());
+        } finally {
+            executor.destroy();
+        }
+    }
+}
@@ -1,10 +1,25 @@
 package com.example.webflaxcalc.services;
 
 import com.example.webflaxcalc.configs.ConfigJson;
+import com.example.webflaxcalc.configs.FunctionConfig;
+import com.example.webflaxcalc.executions.FunctionExecutor;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DefaultDataBufferFactory;
+import reactor.core.publisher.Flux;
 import reactor.test.StepVerifier;
 
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
 
 /**
  * Unit тесты для сервиса CalculationServiceImp
@@ -25,7 +40,7 @@ class CalculationServiceImpTest {
     void testOrderedModeSuccess() {
         CalculationService service = new CalculationServiceImp(config);
 
-        StepVerifier.create(service.streamCsv(2, true))
+        StepVerifier.create(rows(service.streamCsv(2, true)))
                 .expectNextMatches(s -> s.matches("^1,\\d+\\.\\d+,-?\\d+,\\d+,\\d+\\.\\d+,-?\\d+,\\d+$"))
                 .expectNextMatches(s -> s.matches("^2,\\d+\\.\\d+,-?\\d+,\\d+,\\d+\\.\\d+,-?\\d+,\\d+$"))
                 .verifyComplete();
@@ -35,12 +50,48 @@ class CalculationServiceImpTest {
     void testUnorderedModeSuccess() {
         CalculationService service = new CalculationServiceImp(config);
 
-        StepVerifier.create(service.streamCsv(1, false))
+        StepVerifier.create(rows(service.streamCsv(1, false)))
                 .expectNextMatches(s -> s.matches("^1,1,\\d+\\.\\d+,-?\\d+$") || s.matches("^1,2,\\d+\\.\\d+,-?\\d+$"))
                 .expectNextMatches(s -> s.matches("^1,1,\\d+\\.\\d+,-?\\d+$") || s.matches("^1,2,\\d+\\.\\d+,-?\\d+$"))
                 .verifyComplete();
     }
 
+    @Test
+    void testOrderedModeKeepsOrderWhenLaterIterationsFinishFirst() {
+        config.setMaxInFlight(4);
+        // первая итерация самая медленная: остальные успевают посчитаться раньше неё
+        config.setFunction1("lambda x: __import__('time').sleep(0.05 * (5 - x)) or x");
+        config.setFunction2("lambda x: -x");
+        CalculationServiceImp service = new CalculationServiceImp(config);
+
+        List<String> result = rows(service.streamCsv(4, true)).collectList().block(Duration.ofSeconds(10));
+        assertNotNull(result);
+        assertEquals(4, result.size());
+        for (int i = 1; i <= 4; i++) {
+            String[] cols = result.get(i - 1).split(",");
+            assertEquals(String.valueOf(i), cols[0]);
+            assertEquals(i, Double.parseDouble(cols[1]));
+            assertEquals(-i, Double.parseDouble(cols[4]));
+        }
+        service.destroy();
+    }
+
+    @Test
+    void testUnorderedJsRowsAreNotHeldBySlowFunction() {
+        config.setFunction1("function(x) { var t = java.lang.System.currentTimeMillis(); "
+                + "while (java.lang.System.currentTimeMillis() - t < 500) {} return x; }");
+        config.setFunction2("function(x) { var y = x; return -y; }");
+        CalculationServiceImp service = new CalculationServiceImp(config);
+
+        // строка быстрой функции не ждёт медленную, как ждала бы в слитном вызове
+        List<String> result = rows(service.streamCsv(1, false)).collectList().block(Duration.ofSeconds(10));
+        assertNotNull(result);
+        assertEquals(2, result.size());
+        assertTrue(result.get(0).startsWith("1,2,-1.000000,"), result.get(0));
+        assertTrue(result.get(1).startsWith("1,1,1.000000,"), result.get(1));
+        service.destroy();
+    }
+
     @Test
     void testErrorSanitization() {
         ConfigJson badConfig = new ConfigJson();
@@ -50,9 +101,237 @@ class CalculationServiceImpTest {
 
         CalculationService service = new CalculationServiceImp(badConfig);
 
-        StepVerifier.create(service.streamCsv(1, true))
+        StepVerifier.create(rows(service.streamCsv(1, true)))
                 .expectNextMatches(s -> s.contains("error:") && !s.contains("\n"))
                 .verifyComplete();
     }
 
-}
\ No newline at end of file
+    @Test
+    void testBatchedOrderedMode() {
+        config.setBatchSize(2);
+        config.setFunction1("lambda x: x + 0.5");
+        config.setFunction2("lambda x: 10 // (x - 2)");
+        CalculationService service = new CalculationServiceImp(config);
+
+        StepVerifier.create(rows(service.streamCsv(3, true)))
+                .expectNextMatches(s -> s.matches("^1,1\\.500000,\\d+,\\d+,-10\\.000000,\\d+,\\d+$"))
+                .expectNextMatches(s -> s.startsWith("2,2,error: Python error: ZeroDivisionError"))
+                .expectNextMatches(s -> s.matches("^3,3\\.500000,\\d+,\\d+,10\\.000000,\\d+,\\d+$"))
+                .verifyComplete();
+    }
+
+    @Test
+    void testNodeBacklogReturnsToZero() {
+        config.setNodeBufferStats(true);
+        CalculationServiceImp service = new CalculationServiceImp(config);
+
+        StepVerifier.create(rows(service.streamCsv(3, true)))
+                .expectNextCount(3)
+                .verifyComplete();
+        StepVerifier.create(rows(service.streamCsv(2, false)))
+                .expectNextCount(4)
+                .verifyComplete();
+
+        assertEquals(0, service.nodeBacklog(1));
+        assertEquals(0, service.nodeBacklog(2));
+    }
+
+    @Test
+    void testBulkModeKeepsOrderAcrossChunks() {
+        config.setInterval(0);
+        config.setBulkChunkSize(3);
+        config.setBulkWindow(2);
+        config.setFunction1("function(x) { return x * 2; }");
+        config.setFunction2("lambda x: x + 1");
+        CalculationService service = new CalculationServiceImp(config);
+
+        List<String> result = rows(service.streamCsv(10, true)).collectList().block();
+        assertNotNull(result);
+        assertEquals(10, result.size());
+        for (int i = 1; i <= 10; i++) {
+            String[] cols = result.get(i - 1).split(",");
+            assertEquals(String.valueOf(i), cols[0]);
+            assertEquals(2.0 * i, Double.parseDouble(cols[1]));
+            assertEquals(i + 1.0, Double.parseDouble(cols[4]));
+        }
+
+        StepVerifier.create(rows(service.streamCsvBulk(4, false, DefaultDataBufferFactory.sharedInstance)))
+                .expectNextCount(8)
+                .verifyComplete();
+    }
+
+    @Test
+    void testBulkWindowFitsBulkheadThreads() {
+        config.setInterval(0);
+        config.setBulkChunkSize(4);
+        config.setBulkWindow(8);
+        config.getExecutor().setPythonWorkers(1);
+        config.getExecutor().setQueueTimeoutMs(100);
+        // чанк считается ~200 мс — дольше, чем чанк может ждать в очереди
+        config.setFunction1("lambda x: __import__('time').sleep(0.05) or x");
+        config.setFunction2("lambda x: -x");
+        CalculationServiceImp service = new CalculationServiceImp(config);
+
+        List<String> result = rows(service.streamCsv(12, true)).collectList().block(Duration.ofSeconds(10));
+        assertNotNull(result);
+        assertEquals(12, result.size());
+        for (String row : result) {
+            assertTrue(!row.contains("error"), row);
+        }
+        service.destroy();
+    }
+
+    @Test
+    void testTimingColumns() {
+        config.setTimingColumns(true);
+        config.setFunction1("lambda x: x + 1");
+        config.setFunction2("lambda x: x * 2");
+        CalculationService service = new CalculationServiceImp(config);
+
+        StepVerifier.create(rows(service.streamCsv(1, true)))
+                .expectNextMatches(s -> s.matches("^1(,-?\\d+\\.\\d{6},\\d+,\\d+){2}(,\\d+){6}$"))
+                .verifyComplete();
+        StepVerifier.create(rows(service.streamCsv(1, false)))
+                .expectNextMatches(s -> s.matches("^1,[12],-?\\d+\\.\\d{6}(,\\d+){4}$"))
+                .expectNextMatches(s -> s.matches("^1,[12],-?\\d+\\.\\d{6}(,\\d+){4}$"))
+                .verifyComplete();
+    }
+
+    @Test
+    void testRegisteredFunctions() {
+        CalculationServiceImp service = new CalculationServiceImp(config);
+        RegisteredFunction square = service.functions().register("function(x) { return x * x; }", "js", false);
+        RegisteredFunction half = service.functions().register("lambda x: x / 2", "python", false);
+
+        StepVerifier.create(rows(service.streamCsv(2, true, List.of(square, half), DefaultDataBufferFactory.sharedInstance)))
+                .expectNextMatches(s -> s.startsWith("1,1.000000,") && s.contains(",0.500000,"))
+                .expectNextMatches(s -> s.startsWith("2,4.000000,") && s.contains(",1.000000,"))
+                .verifyComplete();
+        service.destroy();
+    }
+
+    @Test
+    void testReloadPinsStreamsToTheirVersion() {
+        config.setFunction1("lambda x: x + 1");
+        config.setFunction2("lambda x: x * 2");
+        CalculationServiceImp service = new CalculationServiceImp(config);
+        Flux<String> before = rows(service.streamCsv(1, true));
+
+        ConfigJson next = new ConfigJson();
+        next.setInterval(1);
+        next.setFunction1("lambda x: x + 100");
+        next.setFunction2("lambda x: x * 20");
+        assertEquals(1, service.reload(next));
+
+        // поток, запрошенный до reload, досчитывается со старыми функциями
+        StepVerifier.create(before)
+                .expectNextMatches(s -> s.startsWith("1,2.000000,") && s.contains(",2.000000,"))
+                .verifyComplete();
+        StepVerifier.create(rows(service.streamCsv(1, true)))
+                .expectNextMatches(s -> s.startsWith("1,101.000000,") && s.contains(",20.000000,"))
+                .verifyComplete();
+
+        // функция с ошибкой не применяется, действует прежняя версия
+        next.setFunction1("lambda x: x +");
+        assertThrows(IllegalArgumentException.class, () -> service.reload(next));
+        assertEquals(1, service.configVersion());
+        service.destroy();
+    }
+
+    @Test
+    void testUnknownScheduleIsRejectedAtLoad() {
+        config.setCatchUp("burts");
+        assertThrows(IllegalArgumentException.class, () -> new CalculationServiceImp(config));
+
+        config.setCatchUp("skip");
+        CalculationServiceImp service = new CalculationServiceImp(config);
+        ConfigJson next = new ConfigJson();
+        next.setSchedule("fixed-daley");
+        assertThrows(IllegalArgumentException.class, () -> service.reload(next));
+        next.setSchedule("fixed-delay");
+        next.setCatchUp("nope");
+        assertThrows(IllegalArgumentException.class, () -> service.reload(next));
+        assertEquals(0, service.configVersion());
+        service.destroy();
+    }
+
+    @Test
+    void testFixedDelayRunsIterationsOneAfterAnother() {
+        config.setFunction1("lambda x: __import__('time').sleep(0.1) or x");
+        config.setFunction2("lambda x: __import__('time').sleep(0.1) or -x");
+        config.setSchedule("fixed-delay");
+        config.setInterval(10);
+        CalculationServiceImp service = new CalculationServiceImp(config);
+        rows(service.streamCsv(1, true)).blockLast(); // прогрев python-процессов
+
+        // каждая итерация ждёт завершения предыдущей: не меньше 4 × (100 + 10) мс
+        long start = System.nanoTime();
+        List<String> ordered = rows(service.streamCsv(4, true)).collectList().block();
+        long elapsedMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        assertNotNull(ordered);
+        assertEquals(4, ordered.size());
+        assertTrue(elapsedMs >= 400, "iterations overlapped: " + elapsedMs + " ms");
+        service.destroy();
+    }
+
+    @Test
+    void testThreeFunctions() {
+        config.setFunctions(List.of(new FunctionConfig("lambda x: x + 1"), new FunctionConfig("lambda x: x * 2"),
+                new FunctionConfig("lambda x: -x")));
+        config.setFunctionParallelism(2);
+        CalculationServiceImp service = new CalculationServiceImp(config);
+
+        // ordered: одна строка из трёх групп res,time,buf
+        StepVerifier.create(rows(service.streamCsv(2, true)))
+                .expectNextMatches(s -> s.matches("^1,2\\.000000,\\d+,\\d+,2\\.000000,\\d+,\\d+,-1\\.000000,\\d+,\\d+$"))
+                .expectNextMatches(s -> s.matches("^2,3\\.000000,\\d+,\\d+,4\\.000000,\\d+,\\d+,-2\\.000000,\\d+,\\d+$"))
+                .verifyComplete();
+
+        // unordered: строка на каждую функцию
+        List<String> unordered = rows(service.streamCsv(1, false)).collectList().block();
+        assertNotNull(unordered);
+        assertEquals(3, unordered.size());
+        assertEquals(List.of("1,1,2.000000", "1,2,2.000000", "1,3,-1.000000"),
+                unordered.stream().map(s -> s.substring(0, s.lastIndexOf(','))).sorted().toList());
+
+        // bulk: те же строки без расписания
+        StepVerifier.create(rows(service.streamCsvBulk(2, false, DefaultDataBufferFactory.sharedInstance)))
+                .expectNextCount(6)
+                .verifyComplete();
+        service.destroy();
+    }
+
+    @Test
+    void testCancelKillsRunningPythonProcess() throws InterruptedException {
+        config.setFunction1("lambda x: __import__('time').sleep(60) or x");
+        config.setFunction2("lambda x: x");
+        CalculationServiceImp service = new CalculationServiceImp(config);
+        FunctionExecutor executor = service.executor();
+        long reapedBefore = executor.reapedPythonProcesses();
+
+        StepVerifier.create(rows(service.streamCsv(1, true)))
+                .expectSubscription()
+                .thenAwait(Duration.ofMillis(500))
+                .thenCancel()
+                .verify(Duration.ofSeconds(5));
+
+        // процесс со sleep(60) убит отменой, а не дождался конца
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (executor.reapedPythonProcesses() == reapedBefore && System.nanoTime() < deadline) {
+            Thread.sleep(20);
+        }
+        assertEquals(reapedBefore + 1, executor.reapedPythonProcesses());
+        service.destroy();
+    }
+
+    /** Раскодировать SSE-кадры сервиса обратно в CSV-строки. */
+    private static Flux<String> rows(Flux<DataBuffer> frames) {
+        return frames.map(buf -> {
+            String frame = buf.toString(StandardCharsets.UTF_8);
+            if (!frame.startsWith("data:") || !frame.endsWith("\n\n")) {
+                throw new AssertionError("not an SSE frame: " + frame);
+            }
+            return frame.substring("data:".length(), frame.length() - 2);
+        });
+    }
+}
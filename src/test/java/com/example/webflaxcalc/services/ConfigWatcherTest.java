@@ -0,0 +1,66 @@
+package com.example.webflaxcalc.services;
+
+import com.example.webflaxcalc.configs.ConfigJson;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit тесты для ConfigWatcher
+ */
+class ConfigWatcherTest {
+
+    private static final String CONFIG = "{\"function1\": \"lambda x: x + %d\", \"function2\": \"lambda x: x * 2\", \"interval\": 10}";
+
+    @Test
+    void testReloadsOnChangeAndKeepsVersionOnError(@TempDir Path dir) throws Exception {
+        Path file = dir.resolve("config.json");
+        Files.writeString(file, String.format(CONFIG, 1));
+        ObjectMapper mapper = new ObjectMapper();
+        CalculationServiceImp service = new CalculationServiceImp(mapper.readValue(file.toFile(), ConfigJson.class));
+        ConfigWatcher watcher = new ConfigWatcher(service, mapper, file.toString());
+        watcher.start();
+        try {
+            Files.writeString(file, String.format(CONFIG, 2));
+            awaitVersion(service, 1);
+
+            // сохранение через временный файл и rename, как делают редакторы
+            Path tmp = dir.resolve("config.json.tmp");
+            Files.writeString(tmp, String.format(CONFIG, 3));
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            awaitVersion(service, 2);
+
+            // невалидный JSON и функция, которая не загружается, не применяются
+            Files.writeString(file, "{\"function1\": ");
+            Files.writeString(file, "{\"function1\": \"lambda x: x +\", \"function2\": \"lambda x: x\", \"interval\": 10}");
+            Thread.sleep(ConfigWatcher.DEBOUNCE_MS * 5);
+            assertEquals(2, service.configVersion());
+
+            // пустые функции тоже не применяются, а наблюдатель продолжает работать
+            Files.writeString(file, "{\"functions\": [null], \"interval\": 10}");
+            Thread.sleep(ConfigWatcher.DEBOUNCE_MS * 5);
+            Files.writeString(file, "{\"functions\": [{\"function\": null}], \"interval\": 10}");
+            Thread.sleep(ConfigWatcher.DEBOUNCE_MS * 5);
+            assertEquals(2, service.configVersion());
+            Files.writeString(file, String.format(CONFIG, 4));
+            awaitVersion(service, 3);
+        } finally {
+            watcher.stop();
+            service.destroy();
+        }
+    }
+
+    private static void awaitVersion(CalculationServiceImp service, long version) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 10_000;
+        while (service.configVersion() < version && System.currentTimeMillis() < deadline) {
+            Thread.sleep(20);
+        }
+        assertEquals(version, service.configVersion());
+    }
+}
@@ -0,0 +1,96 @@
+package com.example.webflaxcalc.services;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DefaultDataBufferFactory;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit тесты для CsvRowEncoder: вывод должен совпадать со String.format.
+ */
+class CsvRowEncoderTest {
+
+    private final DefaultDataBufferFactory factory = DefaultDataBufferFactory.sharedInstance;
+
+    @Test
+    void testRowsMatchStringFormat() {
+        DataBuffer ordered = CsvRowEncoder.orderedRow(factory, 12, new double[]{49.0, -0.1234565}, new long[]{3, 17},
+                new int[]{0, 2}, null);
+        assertEquals("data:" + String.format(Locale.ROOT, "%d,%.6f,%d,%d,%.6f,%d,%d",
+                12, 49.0, 3L, 0, -0.1234565, 17L, 2) + "\n\n", ordered.toString(StandardCharsets.UTF_8));
+
+        DataBuffer unordered = CsvRowEncoder.unorderedRow(factory, 7, 2, 1e-7, -1, null);
+        assertEquals("data:7,2,0.000000,-1\n\n", unordered.toString(StandardCharsets.UTF_8));
+
+        DataBuffer error = CsvRowEncoder.errorRow(factory, 3, 1, "JS error: bad\r\n\nmessage");
+        assertEquals("data:3,1,error: JS error: bad message\n\n", error.toString(StandardCharsets.UTF_8));
+    }
+
+    @Test
+    void testTimingColumns() {
+        DataBuffer ordered = CsvRowEncoder.orderedRow(factory, 1, new double[]{1.0, 2.0}, new long[]{0, 1},
+                new int[]{0, 0}, new long[]{10, 0, 250, 0, 1_500_000, 42});
+        assertEquals("data:1,1.000000,0,0,2.000000,1,0,10,0,250,0,1500000,42\n\n",
+                ordered.toString(StandardCharsets.UTF_8));
+
+        DataBuffer unordered = CsvRowEncoder.unorderedRow(factory, 2, 1, 0.5, 0, new long[]{0, 7, 999});
+        assertEquals("data:2,1,0.500000,0,0,7,999\n\n", unordered.toString(StandardCharsets.UTF_8));
+    }
+
+    @Test
+    void testRowsForNFunctions() {
+        DataBuffer pair = CsvRowEncoder.orderedRow(factory, 4, new double[]{1.5, -3.0}, new long[]{2, 0},
+                new int[]{1, 0}, new long[]{1, 2, 3, 4, 5, 6});
+        assertEquals("data:4,1.500000,2,1,-3.000000,0,0,1,2,3,4,5,6\n\n", pair.toString(StandardCharsets.UTF_8));
+
+        DataBuffer three = CsvRowEncoder.orderedRow(factory, 9, new double[]{1.0, 2.0, 0.25}, new long[]{0, 1, 2},
+                new int[]{0, 3, 1}, null);
+        assertEquals("data:9,1.000000,0,0,2.000000,1,3,0.250000,2,1\n\n", three.toString(StandardCharsets.UTF_8));
+
+        DataBuffer single = CsvRowEncoder.orderedRow(factory, 1, new double[]{7.0}, new long[]{5},
+                new int[]{0}, new long[]{0, 0, 9});
+        assertEquals("data:1,7.000000,5,0,0,0,9\n\n", single.toString(StandardCharsets.UTF_8));
+    }
+
+    @Test
+    void testFixed6MatchesFormatter() {
+        double[] special = {0.0, -0.0, -1e-7, 0.5, 0.0000005, 0.0000015, 2.5e-6, 1.0 / 3, -2.0 / 3,
+                999999.9999995, 1e6, -1e6, 123456789.123456789, Long.MAX_VALUE, Double.MIN_VALUE,
+                Double.MAX_VALUE, Double.NaN, Double.POSITIVE_INFINITY, Double.NEGATIVE_INFINITY};
+        for (double v : special) {
+            assertFixed6(v);
+        }
+        Random random = new Random(42);
+        for (int i = 0; i < 200_000; i++) {
+            double v = switch (i % 4) {
+                case 0 -> random.nextDouble();
+                case 1 -> (random.nextDouble() - 0.5) * 2e6;
+                case 2 -> random.nextInt(1_000_000) / 1e6 + random.nextInt(1000);
+                default -> (random.nextInt(2_000_001) - 1_000_000) / 2e6; // много ровных ничьих
+            };
+            assertFixed6(v);
+        }
+    }
+
+    @Test
+    void testWriteLong() {
+        long[] values = {0, 1, -1, 9, 10, 99, 100, Integer.MAX_VALUE, Integer.MIN_VALUE,
+                999_999_999_999L, Long.MAX_VALUE, Long.MIN_VALUE};
+        for (long v : values) {
+            DataBuffer buf = factory.allocateBuffer(32);
+            CsvRowEncoder.writeLong(buf, v);
+            assertEquals(Long.toString(v), buf.toString(StandardCharsets.US_ASCII));
+        }
+    }
+
+    private void assertFixed6(double v) {
+        DataBuffer buf = factory.allocateBuffer(32);
+        CsvRowEncoder.writeFixed6(buf, v);
+        assertEquals(String.format(Locale.ROOT, "%.6f", v), buf.toString(StandardCharsets.US_ASCII), "v=" + v);
+    }
+}
@@ -0,0 +1,103 @@
+package com.example.webflaxcalc.services;
+
+import com.example.webflaxcalc.configs.ExecutorConfig;
+import com.example.webflaxcalc.executions.FunctionExecutor;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit тесты для FunctionRegistry
+ */
+class FunctionRegistryTest {
+
+    private final FunctionExecutor executor = new FunctionExecutor(interpreted());
+    private final FunctionRegistry registry = new FunctionRegistry(executor, 3, true);
+
+    /** Без нативной компиляции — чтобы функции доходили до Nashorn и python-процессов. */
+    private static ExecutorConfig interpreted() {
+        ExecutorConfig settings = new ExecutorConfig();
+        settings.setNativeExpressions(false);
+        return settings;
+    }
+
+    @AfterEach
+    void tearDown() {
+        executor.destroy();
+    }
+
+    @Test
+    void testRegisterReturnsStableId() {
+        RegisteredFunction js = registry.register("function(x) { return x * 3; }", "js", false);
+        assertEquals(RegisteredFunction.JS, js.language);
+        assertSame(js, registry.register("function(x) { return x * 3; }", "javascript", false));
+        assertSame(js, registry.get(js.id));
+        assertNotEquals(js.id, registry.register("function(x) { return x * 3; }", "js", true).id);
+
+        RegisteredFunction auto = registry.register("lambda x: x - 1", null, false);
+        assertEquals(RegisteredFunction.PYTHON, auto.language);
+        assertEquals(3, registry.size());
+        assertNull(registry.get("missing"));
+    }
+
+    @Test
+    void testInvalidFunctionsAreNotRegistered() {
+        assertThrows(IllegalArgumentException.class, () -> registry.register("function(x) { return x * ; }", "js", false));
+        assertThrows(IllegalArgumentException.class, () -> registry.register("lambda x: x +", "python", false));
+        assertThrows(IllegalArgumentException.class, () -> registry.register("x * 2", "ruby", false));
+        assertThrows(IllegalArgumentException.class, () -> registry.register(" ", "js", false));
+        assertEquals(0, registry.size());
+    }
+
+    @Test
+    void testRegistryIsBounded() {
+        for (int i = 0; i < 3; i++) {
+            registry.register("function(x) { return x + " + i + "; }", "js", false);
+        }
+        assertThrows(IllegalStateException.class, () -> registry.register("function(x) { return -x; }", "js", false));
+        // уже зарегистрированная функция по-прежнему возвращается
+        assertEquals(3, registry.size());
+        assertNotNull(registry.register("function(x) { return x + 0; }", "js", false).id);
+    }
+
+    @Test
+    void testConcurrentRegistrationsDoNotOverfillRegistry() throws Exception {
+        int threads = 16;
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        CountDownLatch start = new CountDownLatch(1);
+        try {
+            List<Future<?>> calls = new ArrayList<>();
+            for (int i = 0; i < threads; i++) {
+                String function = "function(x) { return x * " + (i + 2) + "; }";
+                calls.add(pool.submit(() -> {
+                    start.await();
+                    return registry.register(function, "js", false);
+                }));
+            }
+            start.countDown();
+            int rejected = 0;
+            for (Future<?> call : calls) {
+                try {
+                    call.get(30, TimeUnit.SECONDS);
+                } catch (ExecutionException e) {
+                    assertInstanceOf(IllegalStateException.class, e.getCause());
+                    rejected++;
+                }
+            }
+            assertEquals(3, registry.size());
+            assertEquals(threads - 3, rejected);
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+}
@@ -0,0 +1,93 @@
+package com.example.webflaxcalc.services;
+
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static com.example.webflaxcalc.services.IterationTicker.CatchUp.BURST;
+import static com.example.webflaxcalc.services.IterationTicker.CatchUp.COALESCE;
+import static com.example.webflaxcalc.services.IterationTicker.CatchUp.SKIP;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * Unit тесты для IterationTicker (виртуальное время; последний тест — в реальном времени)
+ */
+class IterationTickerTest {
+
+    private static final Duration INTERVAL = Duration.ofMillis(100);
+
+    @Test
+    void testTicksFollowFixedGrid() {
+        StepVerifier.withVirtualTime(() -> IterationTicker.ticks(3, 100, BURST))
+                .expectSubscription()
+                .expectNoEvent(INTERVAL)
+                .expectNext(1)
+                .expectNoEvent(INTERVAL)
+                .expectNext(2)
+                .expectNoEvent(INTERVAL)
+                .expectNext(3)
+                .verifyComplete();
+    }
+
+    @Test
+    void testBurstCatchesUpMissedTicks() {
+        // спроса нет до 350 мс: тики 100, 200, 300 пропущены
+        StepVerifier.withVirtualTime(() -> IterationTicker.ticks(4, 100, BURST), 0)
+                .expectSubscription()
+                .thenAwait(Duration.ofMillis(350))
+                .thenRequest(10)
+                .expectNext(1, 2, 3)
+                .expectNoEvent(Duration.ofMillis(50))
+                .expectNext(4)
+                .verifyComplete();
+    }
+
+    @Test
+    void testSkipWaitsForNextGridPoint() {
+        StepVerifier.withVirtualTime(() -> IterationTicker.ticks(2, 100, SKIP), 0)
+                .expectSubscription()
+                .thenAwait(Duration.ofMillis(350))
+                .thenRequest(10)
+                .expectNoEvent(Duration.ofMillis(50))
+                .expectNext(1)
+                .expectNoEvent(INTERVAL)
+                .expectNext(2)
+                .verifyComplete();
+    }
+
+    @Test
+    void testCoalesceFiresOnceThenFollowsGrid() {
+        StepVerifier.withVirtualTime(() -> IterationTicker.ticks(2, 100, COALESCE), 0)
+                .expectSubscription()
+                .thenAwait(Duration.ofMillis(350))
+                .thenRequest(10)
+                .expectNext(1)
+                .expectNoEvent(Duration.ofMillis(50))
+                .expectNext(2)
+                .verifyComplete();
+    }
+
+    @Test
+    void testDemandAfterLastTickCompletes() {
+        // flatMap добирает спрос, когда завершается вложенный поток; последний из них
+        // завершается уже после последнего тика — запрос не должен попасть на освобождённый worker
+        StepVerifier.create(IterationTicker.ticks(5, 10, BURST)
+                        .flatMapSequential(i -> Mono.fromFuture(() -> CompletableFuture.supplyAsync(
+                                () -> i, CompletableFuture.delayedExecutor(35, TimeUnit.MILLISECONDS)), false), 2))
+                .expectNext(1, 2, 3, 4, 5)
+                .expectComplete()
+                .verify(Duration.ofSeconds(5));
+    }
+
+    @Test
+    void testCatchUpParse() {
+        assertEquals(BURST, IterationTicker.CatchUp.parse(null));
+        assertEquals(COALESCE, IterationTicker.CatchUp.parse(" Coalesce "));
+        assertThrows(IllegalArgumentException.class, () -> IterationTicker.CatchUp.parse("skipp"));
+    }
+}